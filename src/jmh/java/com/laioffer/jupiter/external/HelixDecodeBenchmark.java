@@ -0,0 +1,198 @@
+package com.laioffer.jupiter.external;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.laioffer.jupiter.entities.Game;
+import com.laioffer.jupiter.entities.Item;
+import com.laioffer.jupiter.util.JsonRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Decoding of one Helix response body into Item or Game objects. The bodies have the shape and the extra fields of
+// real streams, videos, clips and games responses, so the decoder has to skip as much as it does in production.
+//
+// legacyStringAndTree is the path of the first TwitchClient: the whole body as a String, a tree of it to cut out the
+// "data" array, which is printed again and read a second time by a new mapper. streaming is HelixResponseDecoder,
+// the path used today.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HelixDecodeBenchmark {
+    @Param({"streams", "videos", "clips", "games"})
+    public String endpoint;
+
+    @Param({"20", "100"})
+    public int pageSize;
+
+    private byte[] body;
+    private ObjectReader reader;
+    private Class<?> arrayType;
+
+    @Setup
+    public void setUp() throws IOException {
+        boolean games = endpoint.equals("games");
+        reader = JsonRegistry.readerFor(games ? Game.class : Item.class);
+        arrayType = games ? Game[].class : Item[].class;
+        body = new JsonMapper().writeValueAsBytes(payload(endpoint, pageSize, new Random(42)));
+    }
+
+    @Benchmark
+    public List<?> legacyStringAndTree() throws IOException {
+        String text = new String(body, StandardCharsets.UTF_8);
+        JsonMapper mapper = new JsonMapper();
+        String data = mapper.readTree(text).get("data").toString();
+        return Arrays.asList((Object[]) mapper.readValue(data, arrayType));
+    }
+
+    @Benchmark
+    public TwitchPage<?> streaming() throws IOException {
+        return HelixResponseDecoder.decode(new ByteArrayInputStream(body), reader);
+    }
+
+    // Returns a response body like {"data": [...], "pagination": {"cursor": "..."}} with the fields Helix sends for
+    // the given endpoint.
+    static Map<String, Object> payload(String endpoint, int size, Random random) {
+        List<Map<String, Object>> data = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            switch (endpoint) {
+                case "streams":
+                    data.add(stream(i, random));
+                    break;
+                case "videos":
+                    data.add(video(i, random));
+                    break;
+                case "clips":
+                    data.add(clip(i, random));
+                    break;
+                default:
+                    data.add(game(i, random));
+                    break;
+            }
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("data", data);
+        result.put("pagination", Collections.singletonMap("cursor", "eyJiIjpudWxsLCJhIjp7IkN1cnNvciI6IjEwIn19" + size));
+        return result;
+    }
+
+    private static Map<String, Object> stream(int i, Random random) {
+        Map<String, Object> stream = user(i);
+        stream.put("id", String.valueOf(40000000000L + i));
+        stream.put("game_id", "509658");
+        stream.put("game_name", "Just Chatting");
+        stream.put("type", "live");
+        stream.put("title", title(random));
+        stream.put("viewer_count", random.nextInt(100000));
+        stream.put("started_at", "2021-03-10T15:04:21Z");
+        stream.put("language", "en");
+        stream.put("thumbnail_url", "https://static-cdn.jtvnw.net/previews-ttv/live_user_streamer" + i
+                + "-{width}x{height}.jpg");
+        stream.put("tag_ids", Arrays.asList("6ea6bca4-4712-4ab9-a906-e3336a9d8039"));
+        stream.put("tags", Arrays.asList("English", "Chill", "Variety"));
+        stream.put("is_mature", false);
+        return stream;
+    }
+
+    private static Map<String, Object> video(int i, Random random) {
+        Map<String, Object> video = user(i);
+        video.put("id", String.valueOf(900000000L + i));
+        video.put("stream_id", String.valueOf(40000000000L + i));
+        video.put("title", title(random));
+        video.put("description", "Highlights of the last stream, " + title(random));
+        video.put("created_at", "2021-03-09T20:11:04Z");
+        video.put("published_at", "2021-03-09T20:11:04Z");
+        video.put("url", "https://www.twitch.tv/videos/" + (900000000L + i));
+        video.put("thumbnail_url", "https://static-cdn.jtvnw.net/cf_vods/d2nvs31859zcd8/" + i
+                + "/thumb/thumb0-%{width}x%{height}.jpg");
+        video.put("viewable", "public");
+        video.put("view_count", random.nextInt(1000000));
+        video.put("language", "en");
+        video.put("type", "archive");
+        video.put("duration", "3h8m33s");
+        video.put("muted_segments", Collections.singletonList(muted(random)));
+        return video;
+    }
+
+    private static Map<String, Object> clip(int i, Random random) {
+        Map<String, Object> clip = new LinkedHashMap<>();
+        clip.put("id", "AwkwardHelplessSalamanderSwiftRage" + i);
+        clip.put("url", "https://clips.twitch.tv/AwkwardHelplessSalamanderSwiftRage" + i);
+        clip.put("embed_url", "https://clips.twitch.tv/embed?clip=AwkwardHelplessSalamanderSwiftRage" + i);
+        clip.put("broadcaster_id", String.valueOf(67955580 + i));
+        clip.put("broadcaster_name", "streamer" + i);
+        clip.put("creator_id", String.valueOf(53834192 + random.nextInt(1000)));
+        clip.put("creator_name", "viewer" + random.nextInt(1000));
+        clip.put("video_id", String.valueOf(900000000L + i));
+        clip.put("game_id", "509658");
+        clip.put("language", "en");
+        clip.put("title", title(random));
+        clip.put("view_count", random.nextInt(100000));
+        clip.put("created_at", "2021-03-08T22:26:10Z");
+        clip.put("thumbnail_url", "https://clips-media-assets2.twitch.tv/157589949-preview-480x272.jpg");
+        clip.put("duration", 28.3);
+        clip.put("vod_offset", random.nextInt(10000));
+        return clip;
+    }
+
+    private static Map<String, Object> game(int i, Random random) {
+        Map<String, Object> game = new LinkedHashMap<>();
+        game.put("id", String.valueOf(500000 + i));
+        game.put("name", "Game " + random.nextInt(100000));
+        game.put("box_art_url", "https://static-cdn.jtvnw.net/ttv-boxart/" + (500000 + i) + "-{width}x{height}.jpg");
+        game.put("igdb_id", String.valueOf(1000 + i));
+        return game;
+    }
+
+    private static Map<String, Object> user(int i) {
+        Map<String, Object> user = new LinkedHashMap<>();
+        user.put("user_id", String.valueOf(67955580 + i));
+        user.put("user_login", "streamer" + i);
+        user.put("user_name", "Streamer" + i);
+        return user;
+    }
+
+    private static Map<String, Object> muted(Random random) {
+        Map<String, Object> segment = new LinkedHashMap<>();
+        segment.put("duration", 30);
+        segment.put("offset", random.nextInt(10000));
+        return segment;
+    }
+
+    private static String title(Random random) {
+        String[] words = {"ranked", "grind", "chill", "stream", "road", "to", "top", "500", "!drops", "new", "patch",
+                "speedrun", "any%", "with", "viewers", "late", "night"};
+        StringBuilder title = new StringBuilder();
+        int count = 4 + random.nextInt(8);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                title.append(' ');
+            }
+            title.append(words[random.nextInt(words.length)]);
+        }
+        return title.toString();
+    }
+}
@@ -0,0 +1,129 @@
+package com.laioffer.jupiter.recommendation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Build, incremental update and query of CoOccurrenceModel on synthetic favorite records. Users belong to one of a few
+// taste groups and mostly favorite the items of their group, the rest are drawn from a skewed global popularity, so
+// the co-occurrence rows look roughly like real ones.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CoOccurrenceModelBenchmark {
+    private static final int GROUPS = 1000;
+    private static final int GROUP_ITEMS = 50;
+    private static final int MAX_BASKET = 200;
+    private static final int QUERIES = 4096;
+    private static final int LIMIT = 20;
+
+    @Param({"100000", "1000000"})
+    public int favorites;
+
+    @Param({"50000"})
+    public int items;
+
+    private String[] recordUsers;
+    private String[] recordItems;
+    private CoOccurrenceModel model;
+    private String[] queries;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        int users = favorites / 10;
+        String[] userIds = new String[users];
+        for (int i = 0; i < users; i++) {
+            userIds[i] = "user" + i;
+        }
+        String[] itemIds = new String[items];
+        for (int i = 0; i < items; i++) {
+            itemIds[i] = "item" + i;
+        }
+        recordUsers = new String[favorites];
+        recordItems = new String[favorites];
+        for (int i = 0; i < favorites; i++) {
+            int user = random.nextInt(users);
+            int item;
+            if (random.nextDouble() < 0.8) {
+                int group = user % GROUPS;
+                item = (int) ((group * (long) items / GROUPS + random.nextInt(GROUP_ITEMS)) % items);
+            } else {
+                item = (int) (items * Math.pow(random.nextDouble(), 3));
+            }
+            recordUsers[i] = userIds[user];
+            recordItems[i] = itemIds[item];
+        }
+        model = build(favorites);
+        queries = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = recordItems[random.nextInt(favorites)];
+        }
+    }
+
+    private CoOccurrenceModel build(int records) {
+        CoOccurrenceModel result = new CoOccurrenceModel(MAX_BASKET);
+        for (int i = 0; i < records; i++) {
+            result.add(recordUsers[i], recordItems[i]);
+        }
+        return result;
+    }
+
+    // The daily rebuild of ItemSimilarityRecommender.
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public CoOccurrenceModel fullBuild() {
+        return build(favorites);
+    }
+
+    // A query of /recommendation for the items similar to one favorite.
+    @Benchmark
+    public List<String> similarItems() {
+        String query = queries[next];
+        next = (next + 1) % QUERIES;
+        return model.similarItems(query, LIMIT);
+    }
+
+    // The periodic update of ItemSimilarityRecommender: the newest 1% of the records is added to a model built from
+    // the rest. Each measurement adds them once to a fresh model.
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 10)
+    public CoOccurrenceModel incrementalUpdate(IncrementalState state) {
+        for (int i = state.split; i < favorites; i++) {
+            state.model.add(recordUsers[i], recordItems[i]);
+        }
+        return state.model;
+    }
+
+    @State(Scope.Benchmark)
+    public static class IncrementalState {
+        private CoOccurrenceModel model;
+        private int split;
+
+        @Setup(Level.Iteration)
+        public void setUp(CoOccurrenceModelBenchmark benchmark) {
+            split = benchmark.favorites - benchmark.favorites / 100;
+            model = benchmark.build(split);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.laioffer.jupiter.recommendation;
+
+import com.laioffer.jupiter.entities.FavoriteHistory;
+import com.laioffer.jupiter.entities.ItemType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Ranking of the favorite games of one user, which picks the games ItemRecommender searches for a personalized
+// recommendation. Favorites are spread over the last two years, games are drawn from a skewed popularity over
+// distinctGames games, so a few games collect most of the records like for a real heavy user.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FavoriteRankingBenchmark {
+    private static final long TWO_YEARS_MS = TimeUnit.DAYS.toMillis(730);
+
+    @Param({"100", "10000", "200000"})
+    public int favorites;
+
+    @Param({"50", "5000"})
+    public int distinctGames;
+
+    private FavoriteHistory history;
+    private long now;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        ItemType[] types = ItemType.values();
+        now = System.currentTimeMillis();
+        Set<String> itemIds = new HashSet<>();
+        List<FavoriteHistory.Favorite> records = new ArrayList<>(favorites);
+        for (int i = 0; i < favorites; i++) {
+            int game = (int) (distinctGames * Math.pow(random.nextDouble(), 3));
+            itemIds.add("item" + i);
+            records.add(new FavoriteHistory.Favorite(String.valueOf(500000 + game), types[random.nextInt(types.length)],
+                    now - (long) (random.nextDouble() * TWO_YEARS_MS)));
+        }
+        history = new FavoriteHistory(itemIds, records);
+    }
+
+    // The settings of the example config: 3 games per type, a half life of 30 days.
+    @Benchmark
+    public Map<ItemType, List<String>> rank() {
+        return FavoriteGameRanker.rank(history, 3, TimeUnit.DAYS.toMillis(30), now);
+    }
+}
@@ -0,0 +1,119 @@
+package com.laioffer.jupiter.util;
+
+import com.laioffer.jupiter.entities.Item;
+import com.laioffer.jupiter.entities.ItemType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// ServletUtil.writeItemMap() of a recommendation map like the one /recommendation returns: itemsPerType items of each
+// type with the fields Twitch fills in. encoding is the Accept-Encoding of the client, "identity" writes the JSON as
+// is. The response body goes to a stream that only counts the bytes.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WriteItemMapBenchmark {
+    @Param({"20", "100"})
+    public int itemsPerType;
+
+    @Param({"identity", "gzip"})
+    public String encoding;
+
+    private Map<String, List<Item>> itemMap;
+    private HttpServletRequest request;
+    private HttpServletResponse response;
+    private CountingServletOutputStream body;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        itemMap = new HashMap<>();
+        for (ItemType type: ItemType.values()) {
+            List<Item> items = new ArrayList<>(itemsPerType);
+            for (int i = 0; i < itemsPerType; i++) {
+                String id = String.valueOf(900000000L + random.nextInt(100000000));
+                items.add(new Item.Builder()
+                        .id(id)
+                        .title("ranked grind road to top 500 with viewers #" + random.nextInt(1000))
+                        .url("https://www.twitch.tv/videos/" + id)
+                        .thumbnailUrl("https://static-cdn.jtvnw.net/cf_vods/d2nvs31859zcd8/" + id
+                                + "/thumb/thumb0-%{width}x%{height}.jpg")
+                        .broadcasterName("streamer" + random.nextInt(10000))
+                        .gameId(String.valueOf(500000 + random.nextInt(3)))
+                        .type(type)
+                        .build());
+            }
+            itemMap.put(type.toString(), items);
+        }
+
+        body = new CountingServletOutputStream();
+        request = (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { HttpServletRequest.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getHeader":
+                            return "Accept-Encoding".equals(args[0]) ? encoding : null;
+                        case "getServletPath":
+                            return "/recommendation";
+                        default:
+                            return null;
+                    }
+                });
+        // Only getOutputStream() and setters returning void are used.
+        response = (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { HttpServletResponse.class },
+                (proxy, method, args) -> method.getName().equals("getOutputStream") ? body : null);
+    }
+
+    @Benchmark
+    public long writeItemMap() throws IOException {
+        ServletUtil.writeItemMap(request, response, itemMap);
+        return body.count;
+    }
+
+    private static class CountingServletOutputStream extends ServletOutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.laioffer.jupiter.db;
+
+import com.laioffer.jupiter.entities.Item;
+
+// A favorite or unfavorite of one item by one user, waiting in FavoriteWriteBehind to be written to the database.
+class FavoriteOp {
+    private final String userId;
+    private final Item item;
+    private final boolean favorite;
+    // Number of times the record failed to be written on its own, guarded by the flushLock of FavoriteWriteBehind.
+    private int failures;
+
+    FavoriteOp(String userId, Item item, boolean favorite) {
+        this.userId = userId;
+        this.item = item;
+        this.favorite = favorite;
+    }
+
+    String getUserId() {
+        return userId;
+    }
+
+    Item getItem() {
+        return item;
+    }
+
+    boolean isFavorite() {
+        return favorite;
+    }
+
+    int recordFailure() {
+        return ++failures;
+    }
+
+    int getFailures() {
+        return failures;
+    }
+
+    // Ops with the same key overwrite each other, only the last one needs to be written.
+    String getKey() {
+        return userId + '\u0000' + item.getId();
+    }
+}
@@ -0,0 +1,86 @@
+package com.laioffer.jupiter.db;
+
+import com.laioffer.jupiter.entities.FavoriteHistory;
+import com.laioffer.jupiter.entities.Item;
+import com.laioffer.jupiter.entities.ItemType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Immutable view of the favorite items of one user, grouped by item type like getFavoriteItems() returns them, plus
+// the time each item was favorited. Changes create a new snapshot, so a snapshot can be read by any number of threads
+// without locking.
+class FavoriteSnapshot {
+    private final Map<String, List<Item>> itemsByType;
+    private final Set<String> itemIds;
+    private final Map<String, Long> favoredAt;
+
+    FavoriteSnapshot(Map<String, List<Item>> itemMap, Map<String, Long> favoredAt) {
+        Map<String, List<Item>> byType = new HashMap<>();
+        Set<String> ids = new HashSet<>();
+        for (ItemType type: ItemType.values()) {
+            List<Item> items = itemMap.getOrDefault(type.toString(), Collections.emptyList());
+            byType.put(type.toString(), Collections.unmodifiableList(new ArrayList<>(items)));
+            for (Item item: items) {
+                ids.add(item.getId());
+            }
+        }
+        this.itemsByType = Collections.unmodifiableMap(byType);
+        this.itemIds = Collections.unmodifiableSet(ids);
+        this.favoredAt = Collections.unmodifiableMap(new HashMap<>(favoredAt));
+    }
+
+    Map<String, List<Item>> getItemsByType() {
+        return itemsByType;
+    }
+
+    Set<String> getItemIds() {
+        return itemIds;
+    }
+
+    FavoriteHistory toHistory() {
+        List<FavoriteHistory.Favorite> favorites = new ArrayList<>(itemIds.size());
+        for (List<Item> items: itemsByType.values()) {
+            for (Item item: items) {
+                favorites.add(new FavoriteHistory.Favorite(item.getGameId(), item.getType(),
+                        favoredAt.getOrDefault(item.getId(), 0L)));
+            }
+        }
+        return new FavoriteHistory(itemIds, favorites);
+    }
+
+    // Returns a snapshot that also contains the given item, or this snapshot if the item is already in it.
+    FavoriteSnapshot with(Item item) {
+        if (itemIds.contains(item.getId())) {
+            return this;
+        }
+        Map<String, List<Item>> itemMap = new HashMap<>(itemsByType);
+        List<Item> items = new ArrayList<>(itemMap.get(item.getType().toString()));
+        items.add(item);
+        itemMap.put(item.getType().toString(), items);
+        Map<String, Long> times = new HashMap<>(favoredAt);
+        times.put(item.getId(), System.currentTimeMillis());
+        return new FavoriteSnapshot(itemMap, times);
+    }
+
+    // Returns a snapshot without the item with the given id, or this snapshot if the item is not in it.
+    FavoriteSnapshot without(String itemId) {
+        if (!itemIds.contains(itemId)) {
+            return this;
+        }
+        Map<String, List<Item>> itemMap = new HashMap<>();
+        for (Map.Entry<String, List<Item>> entry: itemsByType.entrySet()) {
+            List<Item> items = new ArrayList<>(entry.getValue());
+            items.removeIf(item -> item.getId().equals(itemId));
+            itemMap.put(entry.getKey(), items);
+        }
+        Map<String, Long> times = new HashMap<>(favoredAt);
+        times.remove(itemId);
+        return new FavoriteSnapshot(itemMap, times);
+    }
+}
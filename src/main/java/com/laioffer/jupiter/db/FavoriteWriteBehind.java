@@ -0,0 +1,394 @@
+package com.laioffer.jupiter.db;
+
+import com.laioffer.jupiter.entities.Item;
+import com.laioffer.jupiter.util.AppConfig;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Optional write-behind mode for favorite writes, enabled with favorite_write_behind=true. The favorite servlet puts
+// favorites and unfavorites into a bounded queue and returns right away. A single writer thread drains the queue every
+// favorite_write_behind_flush_ms, or as soon as favorite_write_behind_batch_size records are waiting, and writes them
+// with a few multi-row statements in one transaction. Records are taken from the queue in the order they were added,
+// and only the last record per (user, item) is written, so the final state of every user matches the order of their
+// requests. If the queue stays full for favorite_write_behind_offer_timeout_ms, the calling thread writes the backlog
+// and its own record itself, which slows callers down to the speed of the database. shutdown() writes everything
+// that is left.
+//
+// Records that failed to be written stay pending and are retried with the next batch. A failing batch is split in
+// halves down to single records, so one bad record cannot hold back the others. A record that fails on its own
+// favorite_write_behind_max_attempts times is dropped and logged. At most favorite_write_behind_max_pending records
+// are kept pending. While that many are waiting, e.g. because the database is down, the writer stops taking records
+// from the queue and callers get an error once the queue is full.
+public class FavoriteWriteBehind {
+    private static volatile FavoriteWriteBehind instance;
+
+    // Writes a batch of records, every (user, item) at most once.
+    interface Writer {
+        void write(Collection<FavoriteOp> ops) throws MySQLException;
+    }
+
+    private final Writer writer;
+    private final BlockingQueue<FavoriteOp> queue;
+    private final int batchSize;
+    private final long flushMs;
+    private final long offerTimeoutMs;
+    private final int maxPending;
+    private final int maxAttempts;
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    // Coalesced records that have been taken from the queue but are not written yet, guarded by flushLock. The queue
+    // is only drained with flushLock held, so a record in pending is always older than a record of the same key
+    // that is still queued.
+    private final Object flushLock = new Object();
+    private final Map<String, FavoriteOp> pending = new LinkedHashMap<>();
+    private volatile int pendingCount;
+    // The last record per (user, item) that is not written yet, wherever it is right now. Read by pendingOps().
+    private final ConcurrentHashMap<String, FavoriteOp> unwritten = new ConcurrentHashMap<>();
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong callerWrites = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private FavoriteWriteBehind() {
+        this(FavoriteWriteBehind::writeToDatabase, AppConfig.get());
+    }
+
+    private FavoriteWriteBehind(Writer writer, AppConfig config) {
+        this(writer, config.getInt("favorite_write_behind_queue_size", 10000),
+                config.getInt("favorite_write_behind_batch_size", 500),
+                config.getLong("favorite_write_behind_flush_ms", 200),
+                config.getLong("favorite_write_behind_offer_timeout_ms", 100),
+                config.getInt("favorite_write_behind_max_pending", 20000),
+                config.getInt("favorite_write_behind_max_attempts", 5));
+    }
+
+    FavoriteWriteBehind(Writer writer, int queueSize, int batchSize, long flushMs, long offerTimeoutMs,
+                        int maxPending, int maxAttempts) {
+        this.writer = writer;
+        this.queue = new LinkedBlockingQueue<>(queueSize);
+        this.batchSize = batchSize;
+        this.flushMs = flushMs;
+        this.offerTimeoutMs = offerTimeoutMs;
+        this.maxPending = Math.max(1, maxPending);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        writerThread = new Thread(this::run, "jupiter-favorite-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    private static void writeToDatabase(Collection<FavoriteOp> ops) throws MySQLException {
+        try (MySQLConnection conn = new MySQLConnection()) {
+            conn.applyFavoriteOps(ops);
+        }
+    }
+
+    public static boolean isEnabled() {
+        return AppConfig.get().getBoolean("favorite_write_behind", false);
+    }
+
+    public static FavoriteWriteBehind getInstance() {
+        if (instance == null) {
+            synchronized (FavoriteWriteBehind.class) {
+                if (instance == null) {
+                    instance = new FavoriteWriteBehind();
+                }
+            }
+        }
+        return instance;
+    }
+
+    public void setFavoriteItem(Item item, String userId) throws MySQLException {
+        enqueue(new FavoriteOp(userId, item, true));
+    }
+
+    public void unsetFavoriteItem(Item item, String userId) throws MySQLException {
+        enqueue(new FavoriteOp(userId, item, false));
+    }
+
+    // Returns whether the record can be written at all. A favorite needs the type of the item, an unfavorite only its
+    // id.
+    public static boolean isValid(String userId, Item item, boolean favorite) {
+        return userId != null && item != null && item.getId() != null && (!favorite || item.getType() != null);
+    }
+
+    void enqueue(FavoriteOp op) throws MySQLException {
+        if (!isValid(op.getUserId(), op.getItem(), op.isFavorite())) {
+            throw new MySQLException("Invalid favorite record.");
+        }
+        if (!running) {
+            throw new MySQLException("Failed to save favorite record to Database");
+        }
+        enqueued.incrementAndGet();
+        FavoriteOp previous = unwritten.put(op.getKey(), op);
+        try {
+            if (queue.offer(op, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                updateCache(op);
+                return;
+            }
+        } catch (InterruptedException e) {
+            restoreUnwritten(op, previous);
+            Thread.currentThread().interrupt();
+            throw new MySQLException("Failed to save favorite record to Database");
+        }
+
+        // The queue is full. Write the backlog first so the record of this caller does not overtake older records of
+        // the same user, then write the record itself like in synchronous mode.
+        callerWrites.incrementAndGet();
+        synchronized (flushLock) {
+            int room = maxPending - pending.size();
+            List<FavoriteOp> backlog = new ArrayList<>();
+            if (room > 0) {
+                queue.drainTo(backlog, room);
+            }
+            flush(backlog);
+            // Older records of the same key may still be queued or pending, the caller's record must not overtake
+            // them.
+            if (backlog.size() >= room || pending.containsKey(op.getKey())) {
+                restoreUnwritten(op, previous);
+                throw new MySQLException("Failed to save favorite record to Database");
+            }
+            try {
+                writer.write(Collections.singletonList(op));
+            } catch (RuntimeException e) {
+                failures.incrementAndGet();
+                if (!(e instanceof MySQLException)) {
+                    e.printStackTrace();
+                }
+                // Do not retry a record the caller is told has failed.
+                restoreUnwritten(op, previous);
+                throw new MySQLException("Failed to save favorite record to Database");
+            }
+            written.incrementAndGet();
+            unwritten.remove(op.getKey(), op);
+        }
+        updateCache(op);
+    }
+
+    // The record of the caller was not accepted. The previous record of the same key takes its place again if it is
+    // still on its way to the database.
+    private void restoreUnwritten(FavoriteOp op, FavoriteOp previous) {
+        synchronized (flushLock) {
+            if (previous != null && (pending.get(op.getKey()) == previous || queue.contains(previous))) {
+                unwritten.replace(op.getKey(), op, previous);
+            } else {
+                unwritten.remove(op.getKey(), op);
+            }
+        }
+    }
+
+    private static void updateCache(FavoriteOp op) {
+        if (op.isFavorite()) {
+            FavoritesCache.getInstance().favorited(op.getUserId(), op.getItem());
+        } else {
+            FavoritesCache.getInstance().unfavorited(op.getUserId(), op.getItem().getId());
+        }
+    }
+
+    // Returns the records of the given user that are not written to the database yet, at most one per item.
+    static List<FavoriteOp> pendingOps(String userId) {
+        FavoriteWriteBehind writeBehind = instance;
+        return writeBehind == null ? new ArrayList<>() : writeBehind.unwrittenOps(userId);
+    }
+
+    List<FavoriteOp> unwrittenOps(String userId) {
+        List<FavoriteOp> result = new ArrayList<>();
+        for (FavoriteOp op: unwritten.values()) {
+            if (op.getUserId().equals(userId)) {
+                result.add(op);
+            }
+        }
+        return result;
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                writeBatch();
+            } catch (InterruptedException e) {
+                // shutdown() writes the rest.
+                break;
+            } catch (RuntimeException e) {
+                // Never let a bad record stop the writer thread.
+                failures.incrementAndGet();
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Collect records until the batch is full or the first one has waited for flushMs, then write them together with
+    // the pending ones. The queue is drained with flushLock held, see pending. Callers only wait for the lock when the
+    // queue is full, and then the batch fills up without waiting.
+    private void writeBatch() throws InterruptedException {
+        synchronized (flushLock) {
+            int room = Math.min(batchSize, maxPending - pending.size());
+            if (room <= 0) {
+                // Too many records are pending, only retry them until the database takes records again.
+                flushLock.wait(flushMs);
+                flush(Collections.emptyList());
+                return;
+            }
+            List<FavoriteOp> batch = new ArrayList<>();
+            try {
+                FavoriteOp first = queue.poll(flushMs, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushMs);
+                    while (batch.size() < room) {
+                        queue.drainTo(batch, room - batch.size());
+                        long remaining = deadline - System.nanoTime();
+                        if (batch.size() >= room || remaining <= 0) {
+                            break;
+                        }
+                        FavoriteOp next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                }
+            } finally {
+                // Also retries records that failed before, if there are any. When stop() interrupts the wait, the
+                // records already taken from the queue are not in it any more and must be written here.
+                flush(batch);
+            }
+        }
+    }
+
+    // Merge the given records into the pending ones and write all of them. Records that could not be written stay
+    // pending. Must be called with flushLock held.
+    private void flush(List<FavoriteOp> ops) {
+        for (FavoriteOp op: ops) {
+            // Remove first so a record that replaces an older one moves to the end.
+            if (pending.remove(op.getKey()) != null) {
+                coalesced.incrementAndGet();
+            }
+            pending.put(op.getKey(), op);
+        }
+        if (!pending.isEmpty()) {
+            write(new ArrayList<>(pending.values()), new boolean[1]);
+        }
+        pendingCount = pending.size();
+    }
+
+    // Write the records, or if that fails, each half on its own, down to single records. A single record only counts
+    // as failed if another write of the same flush has succeeded, or if it failed with something other than a
+    // database error. Otherwise the database is probably down: the flush stops right there, instead of trying every
+    // record on its own, and the record moves to the end so it does not block the others next time. Returns false if
+    // the flush was stopped.
+    private boolean write(List<FavoriteOp> ops, boolean[] anyWritten) {
+        RuntimeException error;
+        try {
+            writer.write(ops);
+            anyWritten[0] = true;
+            batches.incrementAndGet();
+            written.addAndGet(ops.size());
+            for (FavoriteOp op: ops) {
+                pending.remove(op.getKey());
+                unwritten.remove(op.getKey(), op);
+            }
+            return true;
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+            error = e;
+        }
+        if (ops.size() > 1) {
+            int middle = ops.size() / 2;
+            return write(ops.subList(0, middle), anyWritten) && write(ops.subList(middle, ops.size()), anyWritten);
+        }
+
+        FavoriteOp op = ops.get(0);
+        boolean badRecord = !(error instanceof MySQLException);
+        if (badRecord) {
+            error.printStackTrace();
+        }
+        if (!anyWritten[0] && !badRecord) {
+            pending.remove(op.getKey());
+            pending.put(op.getKey(), op);
+            return false;
+        }
+        if (op.recordFailure() >= maxAttempts) {
+            drop(op);
+        }
+        return true;
+    }
+
+    // Give up on a record. The cache of the user already shows it, so the user is reloaded from the database.
+    private void drop(FavoriteOp op) {
+        pending.remove(op.getKey());
+        unwritten.remove(op.getKey(), op);
+        dropped.incrementAndGet();
+        System.out.println("Dropped favorite record after " + op.getFailures() + " failed writes: " +
+                (op.isFavorite() ? "favorite " : "unfavorite ") + op.getUserId() + " " + op.getItem().getId());
+        FavoritesCache.getInstance().invalidate(op.getUserId());
+    }
+
+    // Returns the counters of the write-behind queue, e.g. {"queued": 12, "pending": 0, "enqueued": 5000, ...}
+    public static Map<String, Object> getStats() {
+        FavoriteWriteBehind writeBehind = instance;
+        return writeBehind == null ? new LinkedHashMap<>() : writeBehind.stats();
+    }
+
+    Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("queued", queue.size());
+        result.put("pending", pendingCount);
+        result.put("enqueued", enqueued.get());
+        result.put("written", written.get());
+        result.put("coalesced", coalesced.get());
+        result.put("batches", batches.get());
+        result.put("caller_writes", callerWrites.get());
+        result.put("failures", failures.get());
+        result.put("dropped", dropped.get());
+        return result;
+    }
+
+    // Stop accepting records and write everything that is still queued. Must be called before the connection pool is
+    // shut down. Called once when the webapp is stopped.
+    public static void shutdown() {
+        synchronized (FavoriteWriteBehind.class) {
+            FavoriteWriteBehind writeBehind = instance;
+            if (writeBehind == null) {
+                return;
+            }
+            writeBehind.stop();
+            instance = null;
+        }
+    }
+
+    void stop() {
+        running = false;
+        writerThread.interrupt();
+        try {
+            writerThread.join(flushMs * 10);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (flushLock) {
+            List<FavoriteOp> rest = new ArrayList<>();
+            queue.drainTo(rest);
+            flush(rest);
+            if (!pending.isEmpty()) {
+                System.out.println("Failed to write " + pending.size() + " favorite records on shutdown.");
+                for (FavoriteOp op: pending.values()) {
+                    System.out.println((op.isFavorite() ? "favorite " : "unfavorite ") + op.getUserId() + " " +
+                            op.getItem().getId());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.laioffer.jupiter.db;
+
+import com.laioffer.jupiter.entities.FavoriteHistory;
+import com.laioffer.jupiter.entities.Item;
+import com.laioffer.jupiter.util.AppConfig;
+import com.laioffer.jupiter.util.AppExecutors;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+// Write-through cache of the favorite items of each user. A user's favorites are read from the database once and
+// kept as an immutable FavoriteSnapshot, which request threads read without locking. Favorite writes replace the
+// snapshot of the user in place, both in synchronous mode and when the write is queued by FavoriteWriteBehind, so the
+// cache only needs to be invalidated when FavoriteWriteBehind gives up on a record. A user is loaded outside of the
+// map, so a slow query never blocks other users: the first reader registers a Load that later readers wait for, and
+// an update that arrives while the Load is running marks it, so the loaded snapshot is dropped again instead of
+// hiding the update. Users that have not been read for favorites_cache_idle_ms are evicted, and the least recently
+// read users are evicted when there are more than favorites_cache_max_users.
+public class FavoritesCache {
+    private static final long MAINTENANCE_INTERVAL_MS = 30000;
+    private static final FavoritesCache instance = new FavoritesCache();
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Load> loads = new ConcurrentHashMap<>();
+    private final AtomicBoolean trimming = new AtomicBoolean();
+    private volatile boolean maintenanceScheduled;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private static final class Entry {
+        private volatile FavoriteSnapshot snapshot;
+        private volatile long lastAccess;
+
+        private Entry(FavoriteSnapshot snapshot) {
+            this.snapshot = snapshot;
+            this.lastAccess = System.currentTimeMillis();
+        }
+    }
+
+    // A running load of one user. Readers of the same user wait for its future.
+    private static final class Load {
+        private final CompletableFuture<FavoriteSnapshot> future = new CompletableFuture<>();
+        private volatile boolean changed;
+    }
+
+    private FavoritesCache() {
+    }
+
+    public static FavoritesCache getInstance() {
+        return instance;
+    }
+
+    private static int maxUsers() {
+        return AppConfig.get().getInt("favorites_cache_max_users", 10000);
+    }
+
+    private static long idleMs() {
+        return AppConfig.get().getLong("favorites_cache_idle_ms", 600000);
+    }
+
+    // Get favorite items for the given user, in the same format as MySQLConnection.getFavoriteItems(). The returned map
+    // and lists are unmodifiable.
+    public Map<String, List<Item>> getFavoriteItems(String userId) throws MySQLException {
+        return get(userId).getItemsByType();
+    }
+
+    // Get the favorite item ids and the favorite game ids of the given user.
+    public FavoriteHistory getFavoriteHistory(String userId) throws MySQLException {
+        return get(userId).toHistory();
+    }
+
+    private FavoriteSnapshot get(String userId) throws MySQLException {
+        Entry entry = entries.get(userId);
+        if (entry != null) {
+            hits.incrementAndGet();
+            entry.lastAccess = System.currentTimeMillis();
+            return entry.snapshot;
+        }
+        misses.incrementAndGet();
+        Load load = new Load();
+        Load running = loads.putIfAbsent(userId, load);
+        if (running != null) {
+            return await(running);
+        }
+        try {
+            FavoriteSnapshot snapshot = load(userId, load);
+            load.future.complete(snapshot);
+            return snapshot;
+        } catch (RuntimeException e) {
+            load.future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(userId, load);
+        }
+    }
+
+    // Read the user from the database and install the snapshot. Records that are still queued for writing are applied
+    // after the install, through the same path as a new update, so none of them can slip in between. If any update
+    // arrived while the load was running, the database may or may not contain it, so the entry is dropped again and
+    // the next read loads the user once more. Updates mark the load before they look for the entry, so an update
+    // either finds the entry or marks the load.
+    private FavoriteSnapshot load(String userId, Load load) throws MySQLException {
+        FavoriteSnapshot snapshot;
+        try (MySQLConnection conn = new MySQLConnection()) {
+            snapshot = conn.getFavoriteSnapshot(userId);
+        }
+        Entry entry = new Entry(snapshot);
+        entries.put(userId, entry);
+        for (FavoriteOp op: FavoriteWriteBehind.pendingOps(userId)) {
+            update(userId, op.isFavorite() ? current -> current.with(op.getItem())
+                    : current -> current.without(op.getItem().getId()));
+        }
+        if (load.changed) {
+            entries.remove(userId, entry);
+        } else {
+            if (entries.size() > maxUsers()) {
+                trimLater();
+            }
+            scheduleMaintenance();
+        }
+        return entry.snapshot;
+    }
+
+    private static FavoriteSnapshot await(Load load) throws MySQLException {
+        try {
+            return load.future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new MySQLException("Failed to get favorite items from Database.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MySQLException("Failed to get favorite items from Database.");
+        }
+    }
+
+    // Called after the given favorite has been written or queued. Users that are not cached are loaded on their next
+    // read, which then includes the change.
+    void favorited(String userId, Item item) {
+        apply(userId, snapshot -> snapshot.with(item));
+    }
+
+    void unfavorited(String userId, String itemId) {
+        apply(userId, snapshot -> snapshot.without(itemId));
+    }
+
+    private void apply(String userId, UnaryOperator<FavoriteSnapshot> change) {
+        markLoad(userId);
+        update(userId, change);
+    }
+
+    private void update(String userId, UnaryOperator<FavoriteSnapshot> change) {
+        entries.computeIfPresent(userId, (key, entry) -> {
+            entry.snapshot = change.apply(entry.snapshot);
+            return entry;
+        });
+    }
+
+    private void markLoad(String userId) {
+        Load load = loads.get(userId);
+        if (load != null) {
+            load.changed = true;
+        }
+    }
+
+    // Forget the user, the next read loads the favorites from the database again. Only needed when a queued write has
+    // been given up, which the cache has already applied.
+    void invalidate(String userId) {
+        markLoad(userId);
+        entries.remove(userId);
+    }
+
+    private void scheduleMaintenance() {
+        if (maintenanceScheduled) {
+            return;
+        }
+        synchronized (this) {
+            if (!maintenanceScheduled) {
+                AppExecutors.scheduleInBackground(this::evictIdle, MAINTENANCE_INTERVAL_MS, MAINTENANCE_INTERVAL_MS);
+                maintenanceScheduled = true;
+            }
+        }
+    }
+
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleMs();
+        for (Map.Entry<String, Entry> each: entries.entrySet()) {
+            if (each.getValue().lastAccess < cutoff && entries.remove(each.getKey(), each.getValue())) {
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    // Evict the least recently read users in the background until the cache is back to 90% of its size limit.
+    private void trimLater() {
+        if (!trimming.compareAndSet(false, true)) {
+            return;
+        }
+        Runnable trim = () -> {
+            try {
+                int target = maxUsers() * 9 / 10;
+                List<Map.Entry<String, Entry>> all = new ArrayList<>(entries.entrySet());
+                all.sort((e1, e2) -> Long.compare(e1.getValue().lastAccess, e2.getValue().lastAccess));
+                for (int i = 0; i < all.size() && entries.size() > target; i++) {
+                    if (entries.remove(all.get(i).getKey(), all.get(i).getValue())) {
+                        evictions.incrementAndGet();
+                    }
+                }
+            } finally {
+                trimming.set(false);
+            }
+        };
+        try {
+            AppExecutors.runInBackground(trim, 0);
+        } catch (RejectedExecutionException e) {
+            // The webapp is shutting down.
+            trimming.set(false);
+        }
+    }
+
+    // Returns the counters of the cache, e.g. {"users": 120, "hits": 5000, "misses": 130, "evictions": 10}
+    public static Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("users", instance.entries.size());
+        result.put("hits", instance.hits.get());
+        result.put("misses", instance.misses.get());
+        result.put("evictions", instance.evictions.get());
+        return result;
+    }
+}
@@ -1,5 +1,7 @@
 package com.laioffer.jupiter.db;
 
+import com.laioffer.jupiter.entities.FavoriteHistory;
+import com.laioffer.jupiter.entities.FavoriteRecord;
 import com.laioffer.jupiter.entities.Item;
 import com.laioffer.jupiter.entities.ItemType;
 import com.laioffer.jupiter.entities.User;
@@ -8,30 +10,35 @@ import java.sql.*;
 import java.util.*;
 
 public class MySQLConnection implements AutoCloseable {
+    private static final int IN_BATCH_SIZE = 512;
+    private static final int WRITE_BATCH_ROWS = 128;
+    private final MySQLConnectionPool pool;
+    private final PooledConnection pooledConnection;
     private final Connection conn;
+    private boolean closed;
 
-    // Create a connection to the MySQL database.
+    // Borrow a connection to the MySQL database from the shared pool.
     public MySQLConnection() throws MySQLException {
-        try {
-            Class.forName("com.mysql.jdbc.Driver").newInstance();
-            conn = DriverManager.getConnection(MySQLDBUtil.getMySQLAddress());
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new MySQLException("Failed to connect to Database.");
-        }
+        pool = MySQLConnectionPool.getInstance();
+        pooledConnection = pool.borrow();
+        conn = pooledConnection.getConnection();
     }
 
+    // Return the connection to the pool. The physical connection stays open for the next caller.
     @Override
     public void close() {
-        if (conn != null) {
-            try {
-                conn.close();
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+        if (!closed) {
+            closed = true;
+            pool.release(pooledConnection);
         }
     }
 
+    // Returns a prepared statement for the given SQL from the statement cache of the pooled connection. The statement
+    // is owned by the cache and must not be closed by the caller, only its ResultSet.
+    private PreparedStatement prepare(String sql) throws SQLException {
+        return pooledConnection.prepareStatement(sql);
+    }
+
     // Insert a favorite record to the database
     public void setFavoriteItem (Item item, String userId) throws MySQLException {
         if (conn == null) {
@@ -46,14 +53,16 @@ public class MySQLConnection implements AutoCloseable {
         // Using ? and preparedStatement to prevent SQL injection
         String sql = "insert ignore into favorite_records(user_id, item_id) values (?, ?)";
         try {
-            PreparedStatement statement = conn.prepareStatement(sql);
+            PreparedStatement statement = prepare(sql);
             statement.setString(1, userId);
             statement.setString(2, item.getId());
             statement.executeUpdate();
+            bumpFavoriteVersion(userId);
         } catch (SQLException e) {
             e.printStackTrace();
             throw new MySQLException("Failed to save favorite record to Database");
         }
+        FavoritesCache.getInstance().favorited(userId, item);
     }
 
     // Insert an item to the database.
@@ -64,7 +73,7 @@ public class MySQLConnection implements AutoCloseable {
         }
         try {
             String sql = "insert ignore into items values (?, ?, ?, ?, ?, ?, ?)";
-            PreparedStatement statement = conn.prepareStatement(sql);
+            PreparedStatement statement = prepare(sql);
             statement.setString(1, item.getId());
             statement.setString(2, item.getTitle());
             statement.setString(3, item.getUrl());
@@ -79,6 +88,104 @@ public class MySQLConnection implements AutoCloseable {
         }
     }
 
+    // Binds the parameters of one row of a multi-row statement, starting at the given index. Returns the next index.
+    private interface RowBinder {
+        int bind(PreparedStatement statement, int index, FavoriteOp op) throws SQLException;
+    }
+
+    // Rounds the number of rows or ids of a batched statement up to a power of two, so that only a few distinct SQL
+    // texts end up in the statement cache. The extra slots are filled with the last value again.
+    private static int paddedSize(int size) {
+        return size <= 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+    }
+
+    // Write a batch of favorite and unfavorite records in one transaction with multi-row statements. Used by
+    // FavoriteWriteBehind, every (user, item) must appear only once in the batch.
+    void applyFavoriteOps(Collection<FavoriteOp> ops) throws MySQLException {
+        if (conn == null) {
+            System.out.println("DB connection failed.");
+            throw new MySQLException("Failed to connect to Database.");
+        }
+        List<FavoriteOp> favorites = new ArrayList<>();
+        List<FavoriteOp> unfavorites = new ArrayList<>();
+        Map<String, FavoriteOp> opPerUser = new LinkedHashMap<>();
+        for (FavoriteOp op: ops) {
+            (op.isFavorite() ? favorites : unfavorites).add(op);
+            opPerUser.putIfAbsent(op.getUserId(), op);
+        }
+        try {
+            conn.setAutoCommit(false);
+            // Items go first because of the foreign key restriction on item_id(favorite_records) -> id(items)
+            executeRows("insert ignore into items values ", "(?, ?, ?, ?, ?, ?, ?)", "", favorites,
+                    (statement, index, op) -> {
+                        Item item = op.getItem();
+                        statement.setString(index++, item.getId());
+                        statement.setString(index++, item.getTitle());
+                        statement.setString(index++, item.getUrl());
+                        statement.setString(index++, item.getThumbnailUrl());
+                        statement.setString(index++, item.getBroadcasterName());
+                        statement.setString(index++, item.getGameId());
+                        statement.setString(index++, item.getType().toString());
+                        return index;
+                    });
+            executeRows("insert ignore into favorite_records(user_id, item_id) values ", "(?, ?)", "", favorites,
+                    MySQLConnection::bindUserAndItem);
+            executeRows("delete from favorite_records where (user_id, item_id) in (", "(?, ?)", ")", unfavorites,
+                    MySQLConnection::bindUserAndItem);
+            executeRows("insert into favorite_versions (user_id, version) values ", "(?, 1)",
+                    " on duplicate key update version = version + 1", new ArrayList<>(opPerUser.values()),
+                    (statement, index, op) -> {
+                        statement.setString(index++, op.getUserId());
+                        return index;
+                    });
+            conn.commit();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            try {
+                conn.rollback();
+            } catch (SQLException rollbackError) {
+                rollbackError.printStackTrace();
+            }
+            throw new MySQLException("Failed to save favorite records to Database.");
+        } finally {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Bump the favorite version of the given user after a change of the favorite records, see getRecommendations().
+    private void bumpFavoriteVersion(String userId) throws SQLException {
+        String sql = "insert into favorite_versions (user_id, version) values (?, 1) " +
+                "on duplicate key update version = version + 1";
+        PreparedStatement statement = prepare(sql);
+        statement.setString(1, userId);
+        statement.executeUpdate();
+    }
+
+    private static int bindUserAndItem(PreparedStatement statement, int index, FavoriteOp op) throws SQLException {
+        statement.setString(index++, op.getUserId());
+        statement.setString(index++, op.getItem().getId());
+        return index;
+    }
+
+    // Execute prefix + row, row, ... + suffix for the given records, WRITE_BATCH_ROWS rows per statement.
+    private void executeRows(String prefix, String row, String suffix, List<FavoriteOp> ops, RowBinder binder)
+            throws SQLException {
+        for (int from = 0; from < ops.size(); from += WRITE_BATCH_ROWS) {
+            List<FavoriteOp> batch = ops.subList(from, Math.min(from + WRITE_BATCH_ROWS, ops.size()));
+            int rows = paddedSize(batch.size());
+            PreparedStatement statement = prepare(prefix + String.join(", ", Collections.nCopies(rows, row)) + suffix);
+            int index = 1;
+            for (int i = 0; i < rows; i++) {
+                index = binder.bind(statement, index, batch.get(Math.min(i, batch.size() - 1)));
+            }
+            statement.executeUpdate();
+        }
+    }
+
     // Remove a favorite record from the database
     public void unsetFavoriteItem(Item item, String userId) throws MySQLException {
         if (conn == null) {
@@ -87,14 +194,16 @@ public class MySQLConnection implements AutoCloseable {
         }
         String sql = "delete from favorite_records where user_id = ? and item_id = ?";
         try {
-            PreparedStatement statement = conn.prepareStatement(sql);
+            PreparedStatement statement = prepare(sql);
             statement.setString(1, userId);
             statement.setString(2, item.getId());
             statement.executeUpdate();
+            bumpFavoriteVersion(userId);
         } catch (SQLException e) {
             e.printStackTrace();
             throw new MySQLException("Failed to delete favorite item from Database.");
         }
+        FavoritesCache.getInstance().unfavorited(userId, item.getId());
     }
 
     // Get favorite item ids for the given user
@@ -106,12 +215,13 @@ public class MySQLConnection implements AutoCloseable {
         Set<String> favoriteItemIds = new HashSet<>(); // ??
         String sql = "select item_id from favorite_records where user_id = ?";
         try {
-            PreparedStatement statement = conn.prepareStatement(sql);
+            PreparedStatement statement = prepare(sql);
             statement.setString(1, userId);
-            ResultSet resultSet = statement.executeQuery();
-            while (resultSet.next()) {
-                String itemId = resultSet.getString("item_id");
-                favoriteItemIds.add(itemId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    String itemId = resultSet.getString("item_id");
+                    favoriteItemIds.add(itemId);
+                }
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -123,6 +233,11 @@ public class MySQLConnection implements AutoCloseable {
     // Get favorite items for the given user. The returned map includes three entries like {"Video": [item1, item2,
     // item3], "Stream": [item4, item5, item6], "Clip": [item7, item8, ...]}
     public Map<String, List<Item>>  getFavoriteItems (String userId) throws MySQLException {
+        return getFavoriteSnapshot(userId).getItemsByType();
+    }
+
+    // Get the favorite items of the given user together with the time each of them was favorited.
+    FavoriteSnapshot getFavoriteSnapshot(String userId) throws MySQLException {
         if (conn == null) {
             System.out.println("DB connection failed");
             throw new MySQLException("Failed to connect to Database.");
@@ -131,32 +246,25 @@ public class MySQLConnection implements AutoCloseable {
         for (ItemType type: ItemType.values()) {
             itemMap.put(type.toString(), new ArrayList<>());
         }
-        Set<String> favoriteItemIds = getFavoriteItemIds(userId);
-        String sql = "select * from items where id = ?";
+        Map<String, Long> favoredAt = new HashMap<>();
+        // Read the items with one join instead of one query per favorite item.
+        String sql = "select items.*, favorite_records.last_favor_time from favorite_records " +
+                "join items on favorite_records.item_id = items.id where favorite_records.user_id = ?";
         try {
-            PreparedStatement statement = conn.prepareStatement(sql);
-            for (String itemId: favoriteItemIds) {
-                statement.setString(1, itemId);
-                ResultSet resultSet = statement.executeQuery();
-                if (resultSet.next()) {
-                    ItemType type = ItemType.valueOf(resultSet.getString("type"));
-                    Item item = new Item.Builder()
-                            .id(resultSet.getString("id"))
-                            .title(resultSet.getString("title"))
-                            .url(resultSet.getString("url"))
-                            .thumbnailUrl(resultSet.getString("thumbnail_url"))
-                            .broadcasterName(resultSet.getString("broadcaster_name"))
-                            .gameId(resultSet.getString("game_id"))
-                            .type(type)
-                            .build();
-                    itemMap.get(type.toString()).add(item);
+            PreparedStatement statement = prepare(sql);
+            statement.setString(1, userId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    Item item = readItem(resultSet);
+                    itemMap.get(item.getType().toString()).add(item);
+                    favoredAt.put(item.getId(), resultSet.getTimestamp("last_favor_time").getTime());
                 }
             }
         } catch (SQLException e) {
             e.printStackTrace();
             throw new MySQLException("Failed to get favorite items from database.");
         }
-        return itemMap;
+        return new FavoriteSnapshot(itemMap, favoredAt);
     }
 
     // Get favorite game ids for the given user. The returned map includes three entries like {"Video": ["1234",
@@ -170,14 +278,23 @@ public class MySQLConnection implements AutoCloseable {
         for (ItemType type: ItemType.values()) {
             gameIdMap.put(type.toString(), new ArrayList<>());
         }
-        String sql = "select game_id, type from items where id = ?";
+        // Look up the items in batches of IN (...) lists instead of one query per item. The number of placeholders is
+        // rounded up to a power of two and padded with the last id, so only a few distinct statements get cached.
+        List<String> itemIds = new ArrayList<>(favoriteItemIds);
         try {
-            PreparedStatement statement = conn.prepareStatement(sql);
-            for (String itemId: favoriteItemIds) {
-                statement.setString(1, itemId);
-                ResultSet resultSet = statement.executeQuery();
-                if (resultSet.next()) {
-                    gameIdMap.get(resultSet.getString("type")).add(resultSet.getString("game_id"));
+            for (int from = 0; from < itemIds.size(); from += IN_BATCH_SIZE) {
+                List<String> batch = itemIds.subList(from, Math.min(from + IN_BATCH_SIZE, itemIds.size()));
+                int slots = paddedSize(batch.size());
+                String sql = "select game_id, type from items where id in (" +
+                        String.join(", ", Collections.nCopies(slots, "?")) + ")";
+                PreparedStatement statement = prepare(sql);
+                for (int i = 0; i < slots; i++) {
+                    statement.setString(i + 1, batch.get(Math.min(i, batch.size() - 1)));
+                }
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        gameIdMap.get(resultSet.getString("type")).add(resultSet.getString("game_id"));
+                    }
                 }
             }
         } catch (SQLException e) {
@@ -187,6 +304,232 @@ public class MySQLConnection implements AutoCloseable {
         return gameIdMap;
     }
 
+    // Get the favorite item ids of the given user, and the game, type and favorite time of each favorite record, in
+    // one round trip.
+    public FavoriteHistory getFavoriteHistory(String userId) throws MySQLException {
+        if (conn == null) {
+            System.out.println("Database connection failed.");
+            throw new MySQLException("Failed to connect to Database.");
+        }
+        Set<String> favoriteItemIds = new HashSet<>();
+        List<FavoriteHistory.Favorite> favorites = new ArrayList<>();
+        String sql = "select favorite_records.item_id, favorite_records.last_favor_time, items.game_id, items.type " +
+                "from favorite_records join items on favorite_records.item_id = items.id " +
+                "where favorite_records.user_id = ?";
+        try {
+            PreparedStatement statement = prepare(sql);
+            statement.setString(1, userId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    favoriteItemIds.add(resultSet.getString("item_id"));
+                    favorites.add(readFavorite(resultSet));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new MySQLException("Failed to get favorite history from Database.");
+        }
+        return new FavoriteHistory(favoriteItemIds, favorites);
+    }
+
+    private static FavoriteHistory.Favorite readFavorite(ResultSet resultSet) throws SQLException {
+        return new FavoriteHistory.Favorite(resultSet.getString("game_id"),
+                ItemType.valueOf(resultSet.getString("type")), resultSet.getTimestamp("last_favor_time").getTime());
+    }
+
+    // Get the favorite history of every user that has favorite records, keyed by user id. Used by the recommendation
+    // batch job.
+    public Map<String, FavoriteHistory> getAllFavoriteHistories() throws MySQLException {
+        if (conn == null) {
+            System.out.println("Database connection failed.");
+            throw new MySQLException("Failed to connect to Database.");
+        }
+        Map<String, FavoriteHistory> histories = new HashMap<>();
+        String sql = "select favorite_records.user_id, favorite_records.item_id, favorite_records.last_favor_time, " +
+                "items.game_id, items.type from favorite_records join items on favorite_records.item_id = items.id";
+        try {
+            PreparedStatement statement = prepare(sql);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    FavoriteHistory history = histories.computeIfAbsent(resultSet.getString("user_id"),
+                            userId -> new FavoriteHistory(new HashSet<>(), new ArrayList<>()));
+                    history.getFavoriteItemIds().add(resultSet.getString("item_id"));
+                    history.getFavorites().add(readFavorite(resultSet));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new MySQLException("Failed to get favorite histories from Database.");
+        }
+        return histories;
+    }
+
+    // Get all favorite records with a last favorite time at or after sinceMs, oldest first. Used to build and update
+    // the item co-occurrence model.
+    public List<FavoriteRecord> getFavoriteRecordsSince(long sinceMs) throws MySQLException {
+        if (conn == null) {
+            System.out.println("Database connection failed.");
+            throw new MySQLException("Failed to connect to Database.");
+        }
+        List<FavoriteRecord> records = new ArrayList<>();
+        String sql = "select user_id, item_id, last_favor_time from favorite_records where last_favor_time >= ? " +
+                "order by last_favor_time";
+        try {
+            PreparedStatement statement = prepare(sql);
+            statement.setTimestamp(1, new Timestamp(sinceMs));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    records.add(new FavoriteRecord(resultSet.getString("user_id"), resultSet.getString("item_id"),
+                            resultSet.getTimestamp("last_favor_time").getTime()));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new MySQLException("Failed to get favorite records from Database.");
+        }
+        return records;
+    }
+
+    // Get the items with the given ids, in the order of the ids. Ids that are not in the database are skipped.
+    public List<Item> getItems(List<String> itemIds) throws MySQLException {
+        if (conn == null) {
+            System.out.println("Database connection failed.");
+            throw new MySQLException("Failed to connect to Database.");
+        }
+        Map<String, Item> itemMap = new HashMap<>();
+        try {
+            for (int from = 0; from < itemIds.size(); from += IN_BATCH_SIZE) {
+                List<String> batch = itemIds.subList(from, Math.min(from + IN_BATCH_SIZE, itemIds.size()));
+                int slots = paddedSize(batch.size());
+                String sql = "select * from items where id in (" +
+                        String.join(", ", Collections.nCopies(slots, "?")) + ")";
+                PreparedStatement statement = prepare(sql);
+                for (int i = 0; i < slots; i++) {
+                    statement.setString(i + 1, batch.get(Math.min(i, batch.size() - 1)));
+                }
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        Item item = readItem(resultSet);
+                        itemMap.put(item.getId(), item);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new MySQLException("Failed to get items from Database.");
+        }
+        List<Item> items = new ArrayList<>();
+        for (String itemId: itemIds) {
+            if (itemMap.containsKey(itemId)) {
+                items.add(itemMap.get(itemId));
+            }
+        }
+        return items;
+    }
+
+    private static Item readItem(ResultSet resultSet) throws SQLException {
+        return new Item.Builder()
+                .id(resultSet.getString("id"))
+                .title(resultSet.getString("title"))
+                .url(resultSet.getString("url"))
+                .thumbnailUrl(resultSet.getString("thumbnail_url"))
+                .broadcasterName(resultSet.getString("broadcaster_name"))
+                .gameId(resultSet.getString("game_id"))
+                .type(ItemType.valueOf(resultSet.getString("type")))
+                .build();
+    }
+
+    // Get the favorite version of every user that ever changed a favorite, keyed by user id. Read it before the
+    // favorite records the recommendations are computed from: a change in between then makes them look stale, never
+    // fresh.
+    public Map<String, Long> getFavoriteVersions() throws MySQLException {
+        if (conn == null) {
+            System.out.println("Database connection failed.");
+            throw new MySQLException("Failed to connect to Database.");
+        }
+        Map<String, Long> versions = new HashMap<>();
+        String sql = "select user_id, version from favorite_versions";
+        try {
+            PreparedStatement statement = prepare(sql);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    versions.put(resultSet.getString("user_id"), resultSet.getLong("version"));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new MySQLException("Failed to get favorite versions from Database.");
+        }
+        return versions;
+    }
+
+    // Save precomputed recommendations as JSON, keyed by user id, together with the favorite version of each user
+    // they were computed from (0 if the user has none). Rows that already exist are replaced.
+    public void saveRecommendations(Map<String, String> payloads, Map<String, Long> versions) throws MySQLException {
+        if (conn == null) {
+            System.out.println("Database connection failed.");
+            throw new MySQLException("Failed to connect to Database.");
+        }
+        String sql = "insert into recommendations (user_id, payload, updated_at, favorites_version) " +
+                "values (?, ?, ?, ?) on duplicate key update payload = values(payload), " +
+                "updated_at = values(updated_at), favorites_version = values(favorites_version)";
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        try {
+            conn.setAutoCommit(false);
+            PreparedStatement statement = prepare(sql);
+            for (Map.Entry<String, String> each: payloads.entrySet()) {
+                statement.setString(1, each.getKey());
+                statement.setString(2, each.getValue());
+                statement.setTimestamp(3, now);
+                statement.setLong(4, versions.getOrDefault(each.getKey(), 0L));
+                statement.addBatch();
+            }
+            statement.executeBatch();
+            conn.commit();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            try {
+                conn.rollback();
+            } catch (SQLException rollbackError) {
+                rollbackError.printStackTrace();
+            }
+            throw new MySQLException("Failed to save recommendations to Database.");
+        } finally {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Get the precomputed recommendations of the given user as JSON. Returns null if there are none, if they are older
+    // than maxAgeMs, or if the user has favorited or unfavorited something since they were computed, including records
+    // FavoriteWriteBehind has not written yet.
+    public String getRecommendations(String userId, long maxAgeMs) throws MySQLException {
+        if (conn == null) {
+            System.out.println("Database connection failed.");
+            throw new MySQLException("Failed to connect to Database.");
+        }
+        if (!FavoriteWriteBehind.pendingOps(userId).isEmpty()) {
+            return null;
+        }
+        String sql = "select payload from recommendations left join favorite_versions " +
+                "on favorite_versions.user_id = recommendations.user_id where recommendations.user_id = ? " +
+                "and updated_at > ? and favorites_version = coalesce(favorite_versions.version, 0)";
+        try {
+            PreparedStatement statement = prepare(sql);
+            statement.setString(1, userId);
+            statement.setTimestamp(2, new Timestamp(System.currentTimeMillis() - maxAgeMs));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getString("payload") : null;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new MySQLException("Failed to get recommendations from Database.");
+        }
+    }
+
     // Add a new user to the database
     public boolean addUser (User user) throws MySQLException {
         if (conn == null) {
@@ -195,7 +538,7 @@ public class MySQLConnection implements AutoCloseable {
         }
         String sql = "insert ignore into users value (?, ?, ?, ?)";
         try {
-            PreparedStatement statement = conn.prepareStatement(sql);
+            PreparedStatement statement = prepare(sql);
             statement.setString(1, user.getUserId());
             statement.setString(2, user.getPassword());
             statement.setString(3, user.getFirstName());
@@ -215,14 +558,15 @@ public class MySQLConnection implements AutoCloseable {
         }
         String sql = "select * from users where id = ? and password = ?";
         try {
-            PreparedStatement statement = conn.prepareStatement(sql);
+            PreparedStatement statement = prepare(sql);
             statement.setString(1, userId);
             statement.setString(2, password);
-            ResultSet resultSet = statement.executeQuery();
-            if (resultSet.next()) {
-                return resultSet.getString("first_name") + " " + resultSet.getString("last_name");
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next()) {
+                    return resultSet.getString("first_name") + " " + resultSet.getString("last_name");
+                }
+                return "";
             }
-            return "";
         } catch (SQLException e) {
             e.printStackTrace();
             throw new MySQLException("Failed to verify user id and password from Database.");
@@ -0,0 +1,290 @@
+package com.laioffer.jupiter.db;
+
+import com.laioffer.jupiter.util.AppConfig;
+import com.laioffer.jupiter.util.AppExecutors;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Pool of physical MySQL connections shared by all MySQLConnection objects. Opening a connection costs a TCP
+// handshake, authentication and session setup, so connections are kept open and handed out again after they are
+// returned. The pool keeps between db_pool_min_size and db_pool_max_size connections, validates idle connections
+// before handing them out, closes connections that stayed idle for too long and reports connections that were
+// borrowed for longer than the leak detection timeout.
+public class MySQLConnectionPool {
+    private static final long MAINTENANCE_INTERVAL_MS = 10000;
+    private static volatile MySQLConnectionPool instance;
+
+    private final int minSize;
+    private final int maxSize;
+    private final long borrowTimeoutMs;
+    private final long idleTimeoutMs;
+    private final long leakDetectionMs;
+    private final long validationIntervalMs;
+    private final int statementCacheSize;
+
+    // Most recently returned connections are at the head, so the busy ones stay warm and the rest can time out.
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> leased = ConcurrentHashMap.newKeySet();
+    private final Semaphore permits;
+    private final AtomicInteger total = new AtomicInteger();
+    private final ScheduledFuture<?> maintenance;
+    private volatile boolean closed;
+    // Set once MySQLTableCreator.createMissingTables() succeeded, until then every new connection tries again.
+    private volatile boolean migrated;
+
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong leaks = new AtomicLong();
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+    private final LongAdder statementEvictions = new LongAdder();
+
+    private MySQLConnectionPool() {
+        AppConfig config = AppConfig.get();
+        minSize = config.getInt("db_pool_min_size", 2);
+        maxSize = config.getInt("db_pool_max_size", 10);
+        borrowTimeoutMs = config.getLong("db_pool_borrow_timeout_ms", 5000);
+        idleTimeoutMs = config.getLong("db_pool_idle_timeout_ms", 300000);
+        leakDetectionMs = config.getLong("db_pool_leak_detection_ms", 30000);
+        validationIntervalMs = config.getLong("db_pool_validation_interval_ms", 1000);
+        statementCacheSize = config.getInt("db_statement_cache_size", 32);
+        permits = new Semaphore(maxSize, true);
+
+        try {
+            Class.forName("com.mysql.cj.jdbc.Driver");
+        } catch (ClassNotFoundException e) {
+            e.printStackTrace();
+        }
+        // maintain() opens connections, which blocks while the database is slow.
+        maintenance = AppExecutors.scheduleInBackground(this::maintain, MAINTENANCE_INTERVAL_MS,
+                MAINTENANCE_INTERVAL_MS);
+    }
+
+    public static MySQLConnectionPool getInstance() {
+        if (instance == null) {
+            synchronized (MySQLConnectionPool.class) {
+                if (instance == null) {
+                    instance = new MySQLConnectionPool();
+                }
+            }
+        }
+        return instance;
+    }
+
+    // Borrow a connection, waiting up to db_pool_borrow_timeout_ms if all connections are in use. The connection must
+    // be given back with release().
+    PooledConnection borrow() throws MySQLException {
+        if (closed) {
+            throw new MySQLException("Failed to connect to Database.");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMs, TimeUnit.MILLISECONDS)) {
+                timeouts.incrementAndGet();
+                throw new MySQLException("Timed out waiting for a database connection.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MySQLException("Failed to connect to Database.");
+        }
+        recordWait(System.nanoTime() - start);
+
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (pooled.isValid(validationIntervalMs, 2)) {
+                    break;
+                }
+                discard(pooled);
+            }
+            if (pooled == null) {
+                pooled = open();
+            }
+            pooled.markBorrowed(leakDetectionMs > 0 ? new Exception("Connection borrowed here") : null);
+            leased.add(pooled);
+            return pooled;
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    // Give a borrowed connection back to the pool.
+    void release(PooledConnection pooled) {
+        if (!leased.remove(pooled)) {
+            return;
+        }
+        try {
+            Connection conn = pooled.getConnection();
+            if (closed || conn.isClosed()) {
+                discard(pooled);
+                return;
+            }
+            if (!conn.getAutoCommit()) {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+            pooled.markReturned();
+            idle.offerFirst(pooled);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            discard(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private PooledConnection open() throws MySQLException {
+        try {
+            Connection conn = DriverManager.getConnection(MySQLDBUtil.getMySQLAddress());
+            migrate(conn);
+            total.incrementAndGet();
+            created.incrementAndGet();
+            return new PooledConnection(this, conn, statementCacheSize);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new MySQLException("Failed to connect to Database.");
+        }
+    }
+
+    // Running it twice concurrently is harmless, the statements only create tables that do not exist. A failure is
+    // logged and does not fail the connection, the tables are most likely there already.
+    private void migrate(Connection conn) {
+        if (migrated) {
+            return;
+        }
+        try {
+            MySQLTableCreator.createMissingTables(conn);
+            migrated = true;
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void discard(PooledConnection pooled) {
+        total.decrementAndGet();
+        pooled.closeQuietly();
+    }
+
+    private void recordWait(long nanos) {
+        borrows.incrementAndGet();
+        waitNanos.addAndGet(nanos);
+        maxWaitNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    void recordStatementHit() {
+        statementHits.increment();
+    }
+
+    void recordStatementMiss() {
+        statementMisses.increment();
+    }
+
+    void recordStatementEviction() {
+        statementEvictions.increment();
+    }
+
+    // Runs in the background: closes connections that have been idle for too long, opens connections up to the
+    // minimum size and reports leaked connections.
+    private void maintain() {
+        try {
+            long now = System.currentTimeMillis();
+            Iterator<PooledConnection> iterator = idle.descendingIterator();
+            while (iterator.hasNext() && total.get() > minSize) {
+                PooledConnection pooled = iterator.next();
+                if (now - pooled.getLastUsedAt() > idleTimeoutMs && idle.removeLastOccurrence(pooled)) {
+                    discard(pooled);
+                    evicted.incrementAndGet();
+                }
+            }
+            while (!closed && total.get() < minSize) {
+                idle.offerLast(open());
+            }
+
+            if (leakDetectionMs > 0) {
+                for (PooledConnection pooled: leased) {
+                    if (!pooled.isLeakReported() && now - pooled.getBorrowedAt() > leakDetectionMs) {
+                        pooled.setLeakReported();
+                        leaks.incrementAndGet();
+                        System.out.println("Possible connection leak, connection borrowed " +
+                                (now - pooled.getBorrowedAt()) + " ms ago was not returned.");
+                        if (pooled.getBorrowSite() != null) {
+                            pooled.getBorrowSite().printStackTrace();
+                        }
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            // Keep the maintenance job alive, e.g. the database is unreachable for a moment.
+            e.printStackTrace();
+        }
+    }
+
+    // Returns the state of the pool, e.g. {"active": 3, "idle": 2, "total": 5, "max": 10, "avg_wait_ms": 0.1, ...}
+    public static Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        MySQLConnectionPool pool = instance;
+        if (pool == null) {
+            return result;
+        }
+        long borrows = pool.borrows.get();
+        result.put("active", pool.leased.size());
+        result.put("idle", pool.idle.size());
+        result.put("total", pool.total.get());
+        result.put("max", pool.maxSize);
+        result.put("waiting", pool.permits.getQueueLength());
+        result.put("borrows", borrows);
+        result.put("avg_wait_ms", borrows == 0 ? 0 : pool.waitNanos.get() / 1e6 / borrows);
+        result.put("max_wait_ms", pool.maxWaitNanos.get() / 1e6);
+        result.put("timeouts", pool.timeouts.get());
+        result.put("created", pool.created.get());
+        result.put("evicted", pool.evicted.get());
+        result.put("leaks", pool.leaks.get());
+
+        Map<String, Object> statements = new LinkedHashMap<>();
+        long hits = pool.statementHits.sum();
+        long lookups = hits + pool.statementMisses.sum();
+        statements.put("hits", hits);
+        statements.put("misses", lookups - hits);
+        statements.put("evictions", pool.statementEvictions.sum());
+        statements.put("hit_rate", lookups == 0 ? 0 : (double) hits / lookups);
+        result.put("statement_cache", statements);
+        return result;
+    }
+
+    // Close all idle connections and stop handing out new ones. Connections still in use are closed when they are
+    // returned. Called once when the webapp is stopped.
+    public static void shutdown() {
+        synchronized (MySQLConnectionPool.class) {
+            MySQLConnectionPool pool = instance;
+            if (pool == null) {
+                return;
+            }
+            pool.closed = true;
+            pool.maintenance.cancel(false);
+            PooledConnection pooled;
+            while ((pooled = pool.idle.pollFirst()) != null) {
+                pool.discard(pooled);
+            }
+            instance = null;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.laioffer.jupiter.db;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.SQLException;
 import java.sql.Statement;
 
 public class MySQLTableCreator {
@@ -21,7 +22,11 @@ public class MySQLTableCreator {
 
             // Step 2 Drop table in case they exist.
             Statement statement = conn.createStatement();
-            String sql = "DROP TABLE IF EXISTS favorite_records";
+            String sql = "DROP TABLE IF EXISTS recommendations";
+            statement.executeUpdate(sql);
+            sql = "DROP TABLE IF EXISTS favorite_versions";
+            statement.executeUpdate(sql);
+            sql = "DROP TABLE IF EXISTS favorite_records";
             statement.executeUpdate(sql);
             sql = "DROP TABLE IF EXISTS items";
             statement.executeUpdate(sql);
@@ -60,6 +65,8 @@ public class MySQLTableCreator {
                     + ")";
             statement.executeUpdate(sql);
 
+            createMissingTables(conn);
+
             // Step 4 insert fake user 1111/3229c1097c00d497a0fd282d586be050
             sql = "INSERT INTO users VALUES('1111', '3229c1097c00d497a0fd282d586be050', 'John', 'Smith')";
             statement.executeUpdate(sql);
@@ -70,4 +77,32 @@ public class MySQLTableCreator {
             e.printStackTrace();
         }
     }
+
+    // Create the tables added after the first release if they do not exist yet, without touching existing data.
+    // MySQLConnectionPool runs this on its first connection, so an existing database does not need to be reset.
+    static void createMissingTables(Connection conn) throws SQLException {
+        try (Statement statement = conn.createStatement()) {
+            // Bumped on every favorite and unfavorite of the user, so precomputed recommendations can tell whether
+            // the favorites they were computed from are still current.
+            String sql = "CREATE TABLE IF NOT EXISTS favorite_versions ("
+                    + "user_id VARCHAR(255) NOT NULL,"
+                    + "version BIGINT NOT NULL,"
+                    + "PRIMARY KEY (user_id),"
+                    + "FOREIGN KEY (user_id) REFERENCES users(id)"
+                    + ")";
+            statement.executeUpdate(sql);
+
+            // Precomputed recommendations written by RecommendationBatchJob, the payload is the JSON response.
+            // favorites_version is the favorite_versions.version of the user they were computed from.
+            sql = "CREATE TABLE IF NOT EXISTS recommendations ("
+                    + "user_id VARCHAR(255) NOT NULL,"
+                    + "payload MEDIUMTEXT NOT NULL,"
+                    + "updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,"
+                    + "favorites_version BIGINT NOT NULL DEFAULT 0,"
+                    + "PRIMARY KEY (user_id),"
+                    + "FOREIGN KEY (user_id) REFERENCES users(id)"
+                    + ")";
+            statement.executeUpdate(sql);
+        }
+    }
 }
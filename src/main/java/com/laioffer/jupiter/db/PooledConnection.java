@@ -0,0 +1,124 @@
+package com.laioffer.jupiter.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// A physical database connection owned by MySQLConnectionPool, together with the bookkeeping the pool needs to
+// validate, evict and track it. Every connection keeps a small LRU cache of prepared statements keyed by SQL text, so
+// a statement is prepared once per connection instead of once per call. Evicted statements are closed.
+class PooledConnection {
+    private final MySQLConnectionPool pool;
+    private final Connection connection;
+    private final Map<String, PreparedStatement> statements;
+    private final long createdAt;
+    private volatile long lastUsedAt;
+    private volatile long borrowedAt;
+    private volatile Exception borrowSite;
+    private volatile boolean leakReported;
+
+    PooledConnection(MySQLConnectionPool pool, Connection connection, int statementCacheSize) {
+        this.pool = pool;
+        this.connection = connection;
+        this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= statementCacheSize) {
+                    return false;
+                }
+                closeQuietly(eldest.getValue());
+                pool.recordStatementEviction();
+                return true;
+            }
+        };
+        this.createdAt = System.currentTimeMillis();
+        this.lastUsedAt = createdAt;
+    }
+
+    Connection getConnection() {
+        return connection;
+    }
+
+    // Returns the cached statement for the given SQL, or prepares and caches a new one. Only called by the thread
+    // that borrowed the connection.
+    PreparedStatement prepareStatement(String sql) throws SQLException {
+        PreparedStatement statement = statements.get(sql);
+        if (statement != null && !statement.isClosed()) {
+            pool.recordStatementHit();
+            statement.clearParameters();
+            return statement;
+        }
+        pool.recordStatementMiss();
+        statement = connection.prepareStatement(sql);
+        statements.put(sql, statement);
+        return statement;
+    }
+
+    long getLastUsedAt() {
+        return lastUsedAt;
+    }
+
+    long getBorrowedAt() {
+        return borrowedAt;
+    }
+
+    Exception getBorrowSite() {
+        return borrowSite;
+    }
+
+    boolean isLeakReported() {
+        return leakReported;
+    }
+
+    void setLeakReported() {
+        leakReported = true;
+    }
+
+    void markBorrowed(Exception borrowSite) {
+        this.borrowedAt = System.currentTimeMillis();
+        this.borrowSite = borrowSite;
+        this.leakReported = false;
+    }
+
+    void markReturned() {
+        this.lastUsedAt = System.currentTimeMillis();
+        this.borrowSite = null;
+    }
+
+    // Check that the server still accepts the connection. Connections used a moment ago are trusted without a ping.
+    boolean isValid(long validationIntervalMs, int timeoutSeconds) {
+        try {
+            if (connection.isClosed()) {
+                return false;
+            }
+            if (System.currentTimeMillis() - lastUsedAt < validationIntervalMs) {
+                return true;
+            }
+            return connection.isValid(timeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    void closeQuietly() {
+        for (PreparedStatement statement: statements.values()) {
+            closeQuietly(statement);
+        }
+        statements.clear();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
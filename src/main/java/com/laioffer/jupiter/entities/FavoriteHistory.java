@@ -0,0 +1,49 @@
+package com.laioffer.jupiter.entities;
+
+import java.util.List;
+import java.util.Set;
+
+// Favorite records of one user as needed by the recommendation: the favorite item ids, and the game, the item type and
+// the last favorite time of every favorite record.
+public class FavoriteHistory {
+    private final Set<String> favoriteItemIds;
+    private final List<Favorite> favorites;
+
+    public static class Favorite {
+        private final String gameId;
+        private final ItemType type;
+        private final long favoredAt;
+
+        public Favorite(String gameId, ItemType type, long favoredAt) {
+            this.gameId = gameId;
+            this.type = type;
+            this.favoredAt = favoredAt;
+        }
+
+        public String getGameId() {
+            return gameId;
+        }
+
+        public ItemType getType() {
+            return type;
+        }
+
+        // Milliseconds since the epoch, from favorite_records.last_favor_time
+        public long getFavoredAt() {
+            return favoredAt;
+        }
+    }
+
+    public FavoriteHistory(Set<String> favoriteItemIds, List<Favorite> favorites) {
+        this.favoriteItemIds = favoriteItemIds;
+        this.favorites = favorites;
+    }
+
+    public Set<String> getFavoriteItemIds() {
+        return favoriteItemIds;
+    }
+
+    public List<Favorite> getFavorites() {
+        return favorites;
+    }
+}
@@ -0,0 +1,26 @@
+package com.laioffer.jupiter.entities;
+
+// One row of favorite_records: user_id favorited item_id at favoredAt (milliseconds since the epoch).
+public class FavoriteRecord {
+    private final String userId;
+    private final String itemId;
+    private final long favoredAt;
+
+    public FavoriteRecord(String userId, String itemId, long favoredAt) {
+        this.userId = userId;
+        this.itemId = itemId;
+        this.favoredAt = favoredAt;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getItemId() {
+        return itemId;
+    }
+
+    public long getFavoredAt() {
+        return favoredAt;
+    }
+}
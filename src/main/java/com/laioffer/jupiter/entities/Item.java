@@ -21,16 +21,16 @@ public class Item {
 
     @JsonProperty("broadcaster_name")
     @JsonAlias({ "user_name" })
-    private String broadcasterName;
+    private final String broadcasterName;
 
     @JsonProperty("url")
-    private String url;
+    private final String url;
 
     @JsonProperty("game_id")
-    private String gameId;
+    private final String gameId;
 
     @JsonProperty("item_type")
-    private ItemType type;
+    private final ItemType type;
 
     public Item(Builder builder) {
         this.id = builder.id;
@@ -42,16 +42,6 @@ public class Item {
         this.type = builder.type;
     }
 
-    public Item setType(ItemType type) {
-        this.type = type;
-        return this;
-    }
-
-    public Item setGameId(String gameId) {
-        this.gameId = gameId;
-        return this;
-    }
-
     public String getId() {
         return id;
     }
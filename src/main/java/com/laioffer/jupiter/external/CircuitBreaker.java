@@ -0,0 +1,123 @@
+package com.laioffer.jupiter.external;
+
+import com.laioffer.jupiter.util.AppConfig;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Circuit breaker in front of one Helix endpoint. A call counts as failed if it throws or takes longer than
+// twitch_breaker_slow_call_ms. After twitch_breaker_failures failed calls in a row the breaker opens and rejects every
+// call for twitch_breaker_open_ms, so callers stop waiting on an endpoint that is down. Then it lets a single probe
+// call through (half-open): if the probe succeeds the breaker closes again, otherwise it stays open for another period.
+// Every call reports back with the permit it was let through with, so a call that started before the breaker opened
+// and completes late can neither close an open breaker nor decide the outcome of a probe.
+class CircuitBreaker {
+    // Returned by tryAcquire() if the call must not be made.
+    static final long REJECTED = -1;
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long slowCallNanos;
+    private final long openNanos;
+
+    // All guarded by this.
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private long probeStartedAt;
+    // Permit of the current probe, increased for every probe, so the permits of earlier calls never match it.
+    private long probe;
+
+    private long successes;
+    private long failures;
+    private long slowCalls;
+    private long rejections;
+    private long opens;
+
+    CircuitBreaker() {
+        this(AppConfig.get().getInt("twitch_breaker_failures", 5),
+                AppConfig.get().getLong("twitch_breaker_slow_call_ms", 2000),
+                AppConfig.get().getLong("twitch_breaker_open_ms", 30000));
+    }
+
+    CircuitBreaker(int failureThreshold, long slowCallMs, long openMs) {
+        this.failureThreshold = failureThreshold;
+        this.slowCallNanos = slowCallMs * 1000000L;
+        this.openNanos = openMs * 1000000L;
+    }
+
+    // Returns the permit for a call that may be made now, or REJECTED. Every permitted call must be followed by
+    // onSuccess() or onFailure() with the permit.
+    synchronized long tryAcquire() {
+        long now = System.nanoTime();
+        switch (state) {
+            case CLOSED:
+                return probe;
+            case OPEN:
+                if (now - openedAt >= openNanos) {
+                    state = State.HALF_OPEN;
+                    return startProbe(now);
+                }
+                break;
+            case HALF_OPEN:
+                // A probe that never reported back (e.g. it timed out in the rate limiter) must not keep the breaker
+                // half-open forever. Its result no longer counts once the next probe has started.
+                if (now - probeStartedAt >= openNanos) {
+                    return startProbe(now);
+                }
+                break;
+        }
+        rejections++;
+        return REJECTED;
+    }
+
+    private long startProbe(long now) {
+        probeStartedAt = now;
+        return ++probe;
+    }
+
+    synchronized void onSuccess(long permit, long elapsedNanos) {
+        if (elapsedNanos > slowCallNanos) {
+            slowCalls++;
+            recordFailure(permit);
+            return;
+        }
+        successes++;
+        if (state == State.CLOSED) {
+            consecutiveFailures = 0;
+        } else if (state == State.HALF_OPEN && permit == probe) {
+            consecutiveFailures = 0;
+            state = State.CLOSED;
+        }
+    }
+
+    synchronized void onFailure(long permit) {
+        recordFailure(permit);
+    }
+
+    private void recordFailure(long permit) {
+        failures++;
+        consecutiveFailures++;
+        boolean failedProbe = state == State.HALF_OPEN && permit == probe;
+        if (failedProbe || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            opens++;
+        }
+    }
+
+    // Returns the state and counters of the breaker, e.g. {"state": "CLOSED", "successes": 900, "failures": 3, ...}
+    synchronized Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("state", state.name());
+        result.put("successes", successes);
+        result.put("failures", failures);
+        result.put("slow_calls", slowCalls);
+        result.put("rejections", rejections);
+        result.put("opens", opens);
+        return result;
+    }
+}
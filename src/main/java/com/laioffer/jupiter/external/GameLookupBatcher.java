@@ -0,0 +1,169 @@
+package com.laioffer.jupiter.external;
+
+import com.laioffer.jupiter.entities.Game;
+import com.laioffer.jupiter.util.AppConfig;
+import com.laioffer.jupiter.util.AppExecutors;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Merges game lookups by id or by name that arrive within twitch_game_batch_window_ms into one Helix request like
+// games?name=a&name=b&..., which accepts up to 100 values. A batch is sent as soon as it is full or the window has
+// passed, on the non-blocking client, so neither the scheduler nor a pool thread waits for Twitch. Every caller gets
+// the page of its batch and picks its own game from it. A value asked for twice while it is pending shares the same
+// request. The batch runs as INTERACTIVE if any of its callers is.
+class GameLookupBatcher {
+    static final int MAX_BATCH_SIZE = 100;
+    private static final String GAMES_URL = "https://api.twitch.tv/helix/games?";
+
+    interface Fetcher {
+        CompletableFuture<TwitchPage<Game>> fetch(String url, TwitchClient.Priority priority);
+    }
+
+    private final String parameter;
+    private final Fetcher fetcher;
+
+    // All guarded by this.
+    private Map<String, CompletableFuture<TwitchPage<Game>>> pending = new LinkedHashMap<>();
+    private TwitchClient.Priority pendingPriority = TwitchClient.Priority.BACKGROUND;
+    private boolean flushScheduled;
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong merged = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    private static class Batch {
+        private final Map<String, CompletableFuture<TwitchPage<Game>>> futures;
+        private final TwitchClient.Priority priority;
+
+        private Batch(Map<String, CompletableFuture<TwitchPage<Game>>> futures, TwitchClient.Priority priority) {
+            this.futures = futures;
+            this.priority = priority;
+        }
+    }
+
+    // parameter is the Helix query parameter of the values, "id" or "name".
+    GameLookupBatcher(String parameter, Fetcher fetcher) {
+        this.parameter = parameter;
+        this.fetcher = fetcher;
+    }
+
+    // Queue a lookup of the given id or name. The future completes with the page of the whole batch, which holds the
+    // game if Twitch knows it.
+    CompletableFuture<TwitchPage<Game>> lookup(String value, TwitchClient.Priority priority) {
+        lookups.incrementAndGet();
+        CompletableFuture<TwitchPage<Game>> future;
+        Batch full = null;
+        boolean schedule = false;
+        synchronized (this) {
+            if (priority == TwitchClient.Priority.INTERACTIVE) {
+                pendingPriority = priority;
+            }
+            future = pending.get(value);
+            if (future != null) {
+                merged.incrementAndGet();
+                return future;
+            }
+            future = new CompletableFuture<>();
+            pending.put(value, future);
+            if (pending.size() >= MAX_BATCH_SIZE) {
+                full = takePending();
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                schedule = true;
+            }
+        }
+
+        if (full != null) {
+            send(full);
+        } else if (schedule) {
+            long windowMs = AppConfig.get().getLong("twitch_game_batch_window_ms", 5);
+            try {
+                AppExecutors.scheduler().schedule(this::flush, windowMs, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // The webapp is shutting down, send right away.
+                flush();
+            }
+        }
+        return future;
+    }
+
+    private Batch takePending() {
+        Batch batch = new Batch(pending, pendingPriority);
+        pending = new LinkedHashMap<>();
+        pendingPriority = TwitchClient.Priority.BACKGROUND;
+        return batch;
+    }
+
+    private void flush() {
+        Batch batch;
+        synchronized (this) {
+            flushScheduled = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = takePending();
+        }
+        send(batch);
+    }
+
+    private void send(Batch batch) {
+        batches.incrementAndGet();
+        StringBuilder url = new StringBuilder(GAMES_URL);
+        try {
+            for (String value: batch.futures.keySet()) {
+                if (url.length() > GAMES_URL.length()) {
+                    url.append('&');
+                }
+                url.append(parameter).append('=').append(URLEncoder.encode(value, "UTF-8"));
+            }
+        } catch (UnsupportedEncodingException e) {
+            fail(batch, new TwitchException("Failed to get response from Twitch."));
+            return;
+        }
+        fetcher.fetch(url.toString(), batch.priority).whenComplete((page, error) -> {
+            if (error != null) {
+                boolean wrapped = error instanceof CompletionException && error.getCause() != null;
+                fail(batch, wrapped ? error.getCause() : error);
+                return;
+            }
+            for (CompletableFuture<TwitchPage<Game>> future: batch.futures.values()) {
+                future.complete(page);
+            }
+        });
+    }
+
+    // Returns the URL that looks up the given value alone, e.g. https://api.twitch.tv/helix/games?name=Fortnite.
+    String url(String value) {
+        try {
+            return GAMES_URL + parameter + "=" + URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new TwitchException("Failed to get response from Twitch.");
+        }
+    }
+
+    private static void fail(Batch batch, Throwable error) {
+        for (CompletableFuture<TwitchPage<Game>> future: batch.futures.values()) {
+            future.completeExceptionally(error);
+        }
+    }
+
+    // Returns the counters of the batcher, e.g. {"lookups": 900, "merged": 40, "batches": 25, "pending": 3}
+    Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("lookups", lookups.get());
+        result.put("merged", merged.get());
+        result.put("batches", batches.get());
+        synchronized (this) {
+            result.put("pending", pending.size());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,52 @@
+package com.laioffer.jupiter.external;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Decodes a Helix response body like {"data": [{...}, {...}], "pagination": {"cursor": "abc"}} in a single pass over
+// the response stream. Elements of the "data" array are bound to objects one by one, the rest of the body is skipped
+// without building any intermediate String or tree.
+class HelixResponseDecoder {
+    private HelixResponseDecoder() {
+    }
+
+    static <T> TwitchPage<T> decode(InputStream body, ObjectReader reader) throws IOException {
+        List<T> items = Collections.emptyList();
+        String cursor = null;
+        try (JsonParser parser = reader.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Unexpected Helix response, expected a JSON object.");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("data".equals(field) && value == JsonToken.START_ARRAY) {
+                    items = new ArrayList<>();
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        items.add(reader.readValue(parser));
+                    }
+                } else if ("pagination".equals(field) && value == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String paginationField = parser.getCurrentName();
+                        parser.nextToken();
+                        if ("cursor".equals(paginationField)) {
+                            cursor = parser.getValueAsString();
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return new TwitchPage<>(items, cursor);
+    }
+}
@@ -0,0 +1,63 @@
+package com.laioffer.jupiter.external;
+
+import com.laioffer.jupiter.util.AppConfig;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// The last successful Helix response of every recently requested URL, used as a fallback while an endpoint is
+// failing. Pages are kept as stale copies, so whatever is read from here is already marked as stale. The store is an
+// LRU map bounded by twitch_last_good_max_entries, and pages older than twitch_last_good_max_age_ms are not served.
+class LastKnownGoodStore {
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long hits;
+    private long misses;
+
+    private static final class Entry {
+        private final TwitchPage<?> page;
+        private final long storedAt;
+
+        private Entry(TwitchPage<?> page, long storedAt) {
+            this.page = page;
+            this.storedAt = storedAt;
+        }
+    }
+
+    <T> void put(String url, TwitchPage<T> page) {
+        Entry entry = new Entry(new TwitchPage<>(Collections.unmodifiableList(page.getItems()), page.getCursor(), true),
+                System.currentTimeMillis());
+        int maxEntries = AppConfig.get().getInt("twitch_last_good_max_entries", 5000);
+        synchronized (this) {
+            entries.put(url, entry);
+            while (entries.size() > maxEntries) {
+                entries.remove(entries.keySet().iterator().next());
+            }
+        }
+    }
+
+    // Returns the stale copy of the last good page of the URL, or null if there is none that is recent enough.
+    @SuppressWarnings("unchecked")
+    <T> TwitchPage<T> get(String url) {
+        long maxAgeMs = AppConfig.get().getLong("twitch_last_good_max_age_ms", 3600000);
+        synchronized (this) {
+            Entry entry = entries.get(url);
+            if (entry == null || System.currentTimeMillis() - entry.storedAt > maxAgeMs) {
+                misses++;
+                return null;
+            }
+            hits++;
+            return (TwitchPage<T>) entry.page;
+        }
+    }
+
+    // Returns the counters of the store, e.g. {"entries": 300, "hits": 12, "misses": 1}
+    synchronized Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("entries", entries.size());
+        result.put("hits", hits);
+        result.put("misses", misses);
+        return result;
+    }
+}
@@ -0,0 +1,167 @@
+package com.laioffer.jupiter.external;
+
+import com.laioffer.jupiter.entities.Item;
+import com.laioffer.jupiter.entities.ItemType;
+import com.laioffer.jupiter.util.AppConfig;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+// Size-bounded LRU cache of searchByType() results, keyed by (gameId, type, limit). Every item type has its own TTL
+// since streams go stale much faster than videos and clips. The size of the cache is measured in items rather than in
+// entries, so a few large lists cannot take up more memory than many small ones. Cached lists are unmodifiable and
+// hold immutable Item objects, so they can be shared between request threads.
+class SearchCache {
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    interface Loader {
+        TwitchPage<Item> load(String gameId, ItemType type, int limit) throws TwitchException;
+    }
+
+    interface AsyncLoader {
+        CompletableFuture<TwitchPage<Item>> load(String gameId, ItemType type, int limit);
+    }
+
+    private static final class Key {
+        private final String gameId;
+        private final ItemType type;
+        private final int limit;
+
+        private Key(String gameId, ItemType type, int limit) {
+            this.gameId = gameId;
+            this.type = type;
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return limit == key.limit && type == key.type && gameId.equals(key.gameId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(gameId, type, limit);
+        }
+    }
+
+    private static final class Entry {
+        private final List<Item> items;
+        private final long expiresAt;
+
+        private Entry(List<Item> items, long expiresAt) {
+            this.items = items;
+            this.expiresAt = expiresAt;
+        }
+
+        // An empty list still costs a map entry.
+        private int weight() {
+            return items.size() + 1;
+        }
+    }
+
+    // TTLs and the size limit are read from the current config snapshot, so they follow config reloads.
+    private static long ttlMs(ItemType type) {
+        AppConfig config = AppConfig.get();
+        switch (type) {
+            case STREAM:
+                return config.getLong("search_cache_stream_ttl_ms", 30000);
+            case VIDEO:
+                return config.getLong("search_cache_video_ttl_ms", 300000);
+            default:
+                return config.getLong("search_cache_clip_ttl_ms", 300000);
+        }
+    }
+
+    private static long maxWeight() {
+        return AppConfig.get().getLong("search_cache_max_items", 20000);
+    }
+
+    // Return the cached items for the given key, or load and cache them if there is no fresh entry. The loader is
+    // called outside of the lock and must return unmodifiable lists. Stale pages are returned but never cached, the
+    // next call tries Twitch again.
+    List<Item> get(String gameId, ItemType type, int limit, Loader loader) throws TwitchException {
+        Key key = new Key(gameId, type, limit);
+        List<Item> cached = getFresh(key);
+        if (cached != null) {
+            return cached;
+        }
+        return store(key, loader.load(gameId, type, limit));
+    }
+
+    // Same as get(), with a loader that does not block. A hit returns a completed future.
+    CompletableFuture<List<Item>> getAsync(String gameId, ItemType type, int limit, AsyncLoader loader) {
+        Key key = new Key(gameId, type, limit);
+        List<Item> cached = getFresh(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return loader.load(gameId, type, limit).thenApply(page -> store(key, page));
+    }
+
+    // Returns the items of a fresh entry, or null after dropping an expired one.
+    private synchronized List<Item> getFresh(Key key) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            if (entry.expiresAt > System.currentTimeMillis()) {
+                hits++;
+                return entry.items;
+            }
+            entries.remove(key);
+            weight -= entry.weight();
+        }
+        misses++;
+        return null;
+    }
+
+    private List<Item> store(Key key, TwitchPage<Item> page) {
+        if (!page.isStale()) {
+            put(key, new Entry(page.getItems(), System.currentTimeMillis() + ttlMs(key.type)));
+        }
+        return page.getItems();
+    }
+
+    private synchronized void put(Key key, Entry entry) {
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            weight -= previous.weight();
+        }
+        weight += entry.weight();
+
+        // Evict the least recently used entries until the total weight fits again.
+        long maxWeight = maxWeight();
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (weight > maxWeight && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            if (eldest == entry) {
+                continue;
+            }
+            iterator.remove();
+            weight -= eldest.weight();
+            evictions++;
+        }
+    }
+
+    // Returns the counters of the cache, e.g. {"entries": 120, "weight": 1830, "hits": 5000, "misses": 130, ...}
+    synchronized Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("entries", entries.size());
+        result.put("weight", weight);
+        result.put("max_weight", maxWeight());
+        result.put("hits", hits);
+        result.put("misses", misses);
+        result.put("evictions", evictions);
+        return result;
+    }
+}
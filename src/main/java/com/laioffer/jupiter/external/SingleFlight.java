@@ -0,0 +1,114 @@
+package com.laioffer.jupiter.external;
+
+import com.laioffer.jupiter.util.AppExecutors;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Collapses concurrent calls for the same key into one. The first caller runs the fetch, every caller arriving while
+// it is still running waits for that fetch and gets the same result or the same exception. This keeps a burst of
+// identical requests (e.g. a trending game on a cold cache) from being sent to Twitch hundreds of times. A waiting
+// caller gives up after its own timeout, however long the fetch it joined is allowed to take.
+class SingleFlight<T> {
+    private final Map<String, CompletableFuture<T>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong collapsed = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    T execute(String key, Supplier<T> fetch, long timeoutMs) throws TwitchException {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        CompletableFuture<T> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            collapsed.incrementAndGet();
+            return await(existing, timeoutMs);
+        }
+
+        executions.incrementAndGet();
+        try {
+            T result = fetch.get();
+            future.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    // Same as execute(), for a fetch that returns a future instead of blocking. Callers arriving before that future
+    // has completed get a copy of it, which fails on its own after timeoutMs without affecting the others.
+    CompletableFuture<T> executeAsync(String key, Supplier<CompletableFuture<T>> fetch, long timeoutMs) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        CompletableFuture<T> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            collapsed.incrementAndGet();
+            CompletableFuture<T> copy = new CompletableFuture<>();
+            existing.whenComplete((result, error) -> {
+                if (error != null) {
+                    copy.completeExceptionally(error);
+                } else {
+                    copy.complete(result);
+                }
+            });
+            return AppExecutors.withTimeout(copy, timeoutMs, () -> {
+                timeouts.incrementAndGet();
+                return new TwitchException("Timed out getting response from Twitch.");
+            });
+        }
+
+        executions.incrementAndGet();
+        CompletableFuture<T> started;
+        try {
+            started = fetch.get();
+        } catch (RuntimeException e) {
+            started = new CompletableFuture<>();
+            started.completeExceptionally(e);
+        }
+        started.whenComplete((result, error) -> {
+            inFlight.remove(key, future);
+            if (error != null) {
+                future.completeExceptionally(error instanceof CompletionException ? error.getCause() : error);
+            } else {
+                future.complete(result);
+            }
+        });
+        return future;
+    }
+
+    private T await(CompletableFuture<T> future, long timeoutMs) throws TwitchException {
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            timeouts.incrementAndGet();
+            throw new TwitchException("Timed out getting response from Twitch.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new TwitchException("Failed to get response from Twitch.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TwitchException("Failed to get response from Twitch.");
+        }
+    }
+
+    // Returns the counters of the coalescing layer, e.g. {"executions": 120, "collapsed": 800, "timeouts": 0,
+    // "in_flight": 2}
+    Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("executions", executions.get());
+        result.put("collapsed", collapsed.get());
+        result.put("timeouts", timeouts.get());
+        result.put("in_flight", inFlight.size());
+        return result;
+    }
+}
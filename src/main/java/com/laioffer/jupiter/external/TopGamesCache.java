@@ -0,0 +1,169 @@
+package com.laioffer.jupiter.external;
+
+import com.laioffer.jupiter.entities.Game;
+import com.laioffer.jupiter.util.AppConfig;
+import com.laioffer.jupiter.util.AppExecutors;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// In-process cache of the top games list, keyed by the requested limit. A background job reloads each entry shortly
+// before it expires, so callers almost never wait for Twitch. If an entry has expired anyway (e.g. Twitch is slow),
+// callers get the stale list while a reload is running in the background. Stale pages from the last known good store
+// of TwitchClient are passed through but never cached.
+class TopGamesCache {
+    private final Loader loader;
+    private final Map<Integer, Entry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong refreshFailures = new AtomicLong();
+
+    interface Loader {
+        TwitchPage<Game> load(int limit, TwitchClient.Priority priority) throws TwitchException;
+    }
+
+    private static class Entry {
+        private final List<Game> games;
+        private final long loadedAt;
+        private volatile long lastAccess;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private Entry(List<Game> games, long loadedAt) {
+            this.games = games;
+            this.loadedAt = loadedAt;
+            this.lastAccess = loadedAt;
+        }
+    }
+
+    TopGamesCache(Loader loader) {
+        this.loader = loader;
+    }
+
+    // Returns the cached top games for the given limit, or null if there is no usable list and get() would have to wait
+    // for Twitch.
+    TwitchPage<Game> getCached(int limit) {
+        AppConfig config = AppConfig.get();
+        long ttlMs = config.getLong("top_games_ttl_ms", 120000);
+        long maxStaleMs = config.getLong("top_games_max_stale_ms", 600000);
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(limit);
+        if (entry != null) {
+            entry.lastAccess = now;
+            long age = now - entry.loadedAt;
+            if (age < ttlMs) {
+                hits.incrementAndGet();
+                return new TwitchPage<>(entry.games, null);
+            }
+            if (age < maxStaleMs) {
+                // Serve the stale list and revalidate in the background.
+                staleHits.incrementAndGet();
+                scheduleRefresh(limit, entry, 0);
+                return new TwitchPage<>(entry.games, null);
+            }
+        }
+        return null;
+    }
+
+    // Return the top games for the given limit, loading them from Twitch only if there is no usable cached list. A load
+    // on a miss runs with the priority of the caller, the refreshes ahead of expiry always run in the background.
+    // The page is marked stale only if Twitch failed, not while a cached list is being revalidated.
+    TwitchPage<Game> get(int limit, TwitchClient.Priority priority) throws TwitchException {
+        TwitchPage<Game> cached = getCached(limit);
+        if (cached != null) {
+            return cached;
+        }
+
+        Entry entry = entries.get(limit);
+        misses.incrementAndGet();
+        try {
+            return load(limit, entry, priority);
+        } catch (TwitchException e) {
+            if (entry != null) {
+                // Better an old list than an error page.
+                staleHits.incrementAndGet();
+                return new TwitchPage<>(entry.games, null, true);
+            }
+            throw e;
+        }
+    }
+
+    private TwitchPage<Game> load(int limit, Entry previous, TwitchClient.Priority priority) throws TwitchException {
+        TwitchPage<Game> page = loader.load(limit, priority);
+        if (page.isStale()) {
+            return page;
+        }
+        Entry entry = new Entry(Collections.unmodifiableList(page.getItems()), System.currentTimeMillis());
+        if (previous != null) {
+            entry.lastAccess = previous.lastAccess;
+        }
+        entries.put(limit, entry);
+        AppConfig config = AppConfig.get();
+        long ttlMs = config.getLong("top_games_ttl_ms", 120000);
+        scheduleRefresh(limit, entry, Math.max(0, ttlMs - config.getLong("top_games_refresh_ahead_ms", 20000)));
+        return new TwitchPage<>(entry.games, null);
+    }
+
+    // Reload the entry after the given delay, unless a reload is already pending for it.
+    private void scheduleRefresh(int limit, Entry entry, long delayMs) {
+        if (!entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            AppExecutors.runInBackground(() -> refresh(limit, entry), delayMs);
+        } catch (RejectedExecutionException e) {
+            // The webapp is shutting down.
+            entry.refreshing.set(false);
+        }
+    }
+
+    private void refresh(int limit, Entry entry) {
+        if (entries.get(limit) != entry) {
+            return;
+        }
+        AppConfig config = AppConfig.get();
+        long ttlMs = config.getLong("top_games_ttl_ms", 120000);
+        // Limits that nobody asked for during the last period are not refreshed ahead any more. The next request gets
+        // the stale list and triggers a reload.
+        if (System.currentTimeMillis() - entry.lastAccess > ttlMs) {
+            entry.refreshing.set(false);
+            return;
+        }
+        boolean loaded;
+        try {
+            loaded = !load(limit, entry, TwitchClient.Priority.BACKGROUND).isStale();
+        } catch (RuntimeException e) {
+            loaded = false;
+        }
+        if (loaded) {
+            refreshes.incrementAndGet();
+        } else {
+            refreshFailures.incrementAndGet();
+            // Keep the current entry and try again later.
+            entry.refreshing.set(false);
+            if (System.currentTimeMillis() - entry.loadedAt < config.getLong("top_games_max_stale_ms", 600000)) {
+                scheduleRefresh(limit, entry, config.getLong("top_games_refresh_ahead_ms", 20000));
+            }
+        }
+    }
+
+    // Returns the counters of the cache, e.g. {"size": 2, "hits": 1024, "stale_hits": 3, "misses": 2, ...}
+    Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("size", entries.size());
+        result.put("hits", hits.get());
+        result.put("stale_hits", staleHits.get());
+        result.put("misses", misses.get());
+        result.put("refreshes", refreshes.get());
+        result.put("refresh_failures", refreshFailures.get());
+        return result;
+    }
+}
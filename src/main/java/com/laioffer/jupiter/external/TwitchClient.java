@@ -1,55 +1,97 @@
 package com.laioffer.jupiter.external;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.json.JsonMapper;
-import com.laioffer.jupiter.db.MySQLDBUtil;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.laioffer.jupiter.entities.Game;
 import com.laioffer.jupiter.entities.Item;
 import com.laioffer.jupiter.entities.ItemType;
+import com.laioffer.jupiter.util.AppConfig;
+import com.laioffer.jupiter.util.AppExecutors;
+import com.laioffer.jupiter.util.JsonRegistry;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
 import org.apache.http.client.ResponseHandler;
+import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.util.EntityUtils;
 
-import org.json.JSONObject;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
-import com.fasterxml.jackson.core.JsonProcessingException;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class TwitchClient {
-    private static String clientId;
-    private static String token;
-    private static int searchLimit;
-    private static int gameLimit;
-    private static int gameLimitMax;
+    // Order in which requests waiting for the rate limit are served. Requests made for a user who is waiting on the
+    // response are INTERACTIVE, refreshes and batch jobs are BACKGROUND.
+    public enum Priority {
+        INTERACTIVE, BACKGROUND
+    }
+
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private final Priority priority;
+    private final String clientId;
+    private final String token;
+    private final int searchLimit;
+    private final int gameLimit;
+    private final int gameLimitMax;
+    private final boolean concurrentSearch;
+    private final long searchTimeoutMs;
+    private final long queueTimeoutMs;
+    private final long waitTimeoutMs;
+    private final int maxRetries;
+    // Set once any response returned by this client was a last known good page instead of a fresh one.
+    private volatile boolean stale;
     private static final String TOP_GAME_URL_PATTERN = "https://api.twitch.tv/helix/games/top?first=%s";
-    private static final String GAME_SEARCH_URL_PATTERN = "https://api.twitch.tv/helix/games?name=%s";
     private static final String CLIP_SEARCH_URL_PATTERN = "https://api.twitch.tv/helix/clips?game_id=%s&first=%s";
     private static final String STREAM_SEARCH_URL_PATTERN = "https://api.twitch.tv/helix/streams?game_id=%s&first=%s";
     private static final String VIDEO_SEARCH_URL_PATTERN = "https://api.twitch.tv/helix/videos?game_id=%s&first=%s";
+    private static final TopGamesCache topGamesCache = new TopGamesCache(
+            (limit, priority) -> new TwitchClient(priority).fetchTopGames(limit));
+    private static final Map<TwitchEndpoint, CircuitBreaker> breakers = createBreakers();
+    private static final LastKnownGoodStore lastKnownGood = new LastKnownGoodStore();
+    private static final GameLookupBatcher gamesById = new GameLookupBatcher("id",
+            (url, priority) -> new TwitchClient(priority).getGameBatchAsync(url));
+    private static final GameLookupBatcher gamesByName = new GameLookupBatcher("name",
+            (url, priority) -> new TwitchClient(priority).getGameBatchAsync(url));
+    private static final SearchCache searchCache = new SearchCache();
+    private static final SingleFlight<TwitchPage<?>> inFlightRequests = new SingleFlight<>();
+    private static final ObjectReader GAME_READER = JsonRegistry.readerFor(Game.class);
+    private static final ObjectReader ITEM_READER = JsonRegistry.readerFor(Item.class);
+    private static final TwitchRateLimiter rateLimiter = new TwitchRateLimiter();
 
     public TwitchClient() {
-        Properties prop = new Properties();
-        String propFileName = "config.properties";
-
-        InputStream inputStream = MySQLDBUtil.class.getClassLoader().getResourceAsStream(propFileName);
-        try {
-            prop.load(inputStream);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        this(Priority.INTERACTIVE);
+    }
 
-        clientId = prop.getProperty("client_id");
-        token = prop.getProperty("token");
-        searchLimit = Integer.valueOf(prop.getProperty("search_limit"));
-        gameLimit = Integer.valueOf(prop.getProperty("game_limit"));
-        gameLimitMax = Integer.valueOf(prop.getProperty("game_limit_max"));
+    public TwitchClient(Priority priority) {
+        this.priority = priority;
+        // Read all settings from one config snapshot, so a reload never mixes old and new values within a request.
+        AppConfig config = AppConfig.get();
+        clientId = config.getString("client_id");
+        token = config.getString("token");
+        searchLimit = config.getInt("search_limit", 20);
+        gameLimit = config.getInt("game_limit", 20);
+        gameLimitMax = config.getInt("game_limit_max", 500);
+        concurrentSearch = config.getBoolean("search_concurrent", true);
+        searchTimeoutMs = config.getLong("search_timeout_ms", 5000);
+        queueTimeoutMs = priority == Priority.INTERACTIVE
+                ? config.getLong("twitch_queue_timeout_ms", 3000)
+                : config.getLong("twitch_background_queue_timeout_ms", 60000);
+        // The longest a request of this client may take: the rate limiter queue, then one HTTP exchange.
+        waitTimeoutMs = queueTimeoutMs + config.getLong("http_connect_timeout_ms", 2000)
+                + config.getLong("http_read_timeout_ms", 5000);
+        maxRetries = config.getInt("twitch_max_retries", 3);
     }
 
     //  Build the request URL which will be used when calling Twitch APIs, e.g. https://api.twitch.tv/helix/games/top
@@ -68,139 +110,665 @@ public class TwitchClient {
         return String.format(url, gameName);
     }
 
-    // Send HTTP request to Twitch Backend based on the given URL, and returns the body of the HTTP response returned
-    // from Twitch backend.
-    private String searchTwitch(String url) throws TwitchException {
-        // Define the response handler to parse and return HTTP response body returned from Twitch
-        ResponseHandler<String> responseHandler = (response) -> {
-            if (response.getStatusLine().getStatusCode() != 200) {
-                System.out.println("Response Status: " + response.getStatusLine().getStatusCode());
+    private static Map<TwitchEndpoint, CircuitBreaker> createBreakers() {
+        Map<TwitchEndpoint, CircuitBreaker> result = new EnumMap<>(TwitchEndpoint.class);
+        for (TwitchEndpoint endpoint: TwitchEndpoint.values()) {
+            result.put(endpoint, new CircuitBreaker());
+        }
+        return result;
+    }
+
+    // Send HTTP request to Twitch Backend based on the given URL, and returns the decoded page of the HTTP response
+    // returned from Twitch backend. Concurrent calls of the same priority for the same URL share a single request. If
+    // the circuit breaker of the endpoint is open or the request fails, the last known good page of the URL is returned
+    // instead, marked as stale. Only when there is none the call fails.
+    @SuppressWarnings("unchecked")
+    private <T> TwitchPage<T> searchTwitch(TwitchEndpoint endpoint, String url, ObjectReader reader)
+            throws TwitchException {
+        CircuitBreaker breaker = breakers.get(endpoint);
+        long permit = breaker.tryAcquire();
+        if (permit == CircuitBreaker.REJECTED) {
+            return fallback(url, new TwitchException("Twitch is unavailable."));
+        }
+        try {
+            return (TwitchPage<T>) inFlightRequests.execute(flightKey(url),
+                    () -> remember(url, sendRequest(breaker, permit, url, reader)), waitTimeoutMs);
+        } catch (TwitchException e) {
+            return fallback(url, e);
+        }
+    }
+
+    // Same as searchTwitch(), without blocking. The returned future completes on an I/O callback of the non-blocking
+    // client, so callbacks attached to it must not block either.
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<TwitchPage<T>> searchTwitchAsync(TwitchEndpoint endpoint, String url,
+                                                                   ObjectReader reader) {
+        CircuitBreaker breaker = breakers.get(endpoint);
+        CompletableFuture<TwitchPage<?>> page;
+        long permit = breaker.tryAcquire();
+        if (permit != CircuitBreaker.REJECTED) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(queueTimeoutMs);
+            page = inFlightRequests.executeAsync(flightKey(url),
+                    () -> this.<T>sendRequestAsync(breaker, permit, url, reader, deadline, 1)
+                            .thenApply(result -> remember(url, result)),
+                    waitTimeoutMs);
+        } else {
+            page = new CompletableFuture<>();
+            page.completeExceptionally(new TwitchException("Twitch is unavailable."));
+        }
+        return page.handle((result, error) -> result != null ? (TwitchPage<T>) result : fallback(url, unwrap(error)));
+    }
+
+    // Requests are only shared within a priority. An interactive request that joined a background one would wait behind
+    // the reserve of the rate limiter and with the much longer background queue timeout.
+    private String flightKey(String url) {
+        return priority + " " + url;
+    }
+
+    private static TwitchException unwrap(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        if (error instanceof TwitchException) {
+            return (TwitchException) error;
+        }
+        error.printStackTrace();
+        return new TwitchException("Failed to get response from Twitch.");
+    }
+
+    private static <T> TwitchPage<T> remember(String url, TwitchPage<T> page) {
+        lastKnownGood.put(url, page);
+        return page;
+    }
+
+    private <T> TwitchPage<T> fallback(String url, TwitchException e) throws TwitchException {
+        TwitchPage<T> page = lastKnownGood.get(url);
+        if (page == null) {
+            throw e;
+        }
+        stale = true;
+        return page;
+    }
+
+    // Returns whether any data returned by this client so far came from the last known good store rather than from
+    // Twitch, so the servlet can tell its caller.
+    public boolean isStale() {
+        return stale;
+    }
+
+    // Every attempt first waits for the shared rate limiter, at most queueTimeoutMs in total. A 429 is retried after a
+    // jittered backoff up to maxRetries times, as long as the retry still fits into that time.
+    // The HTTP exchange itself is reported to the circuit breaker, a 429 or the time spent queueing is not. Only a 5xx,
+    // a timeout or an I/O error counts as a failure, any other 4xx is an answer of a healthy Twitch.
+    private <T> TwitchPage<T> sendRequest(CircuitBreaker breaker, long permit, String url, ObjectReader reader)
+            throws TwitchException {
+        // Define the response handler to decode the HTTP response body returned from Twitch straight from the stream
+        ResponseHandler<TwitchPage<T>> responseHandler = (response) -> readPage(response, reader);
+
+        // The shared client is pooled and must not be closed here, the response handler releases the connection back
+        // to the pool once the body has been consumed.
+        CloseableHttpClient httpClient = TwitchHttpTransport.getInstance().getHttpClient();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(queueTimeoutMs);
+        for (int retry = 1; ; retry++) {
+            rateLimiter.acquire(priority, deadline);
+            boolean throttled = false;
+            long start = System.nanoTime();
+            try {
+                TwitchPage<T> page = httpClient.execute(createRequest(url), responseHandler);
+                breaker.onSuccess(permit, System.nanoTime() - start);
+                return page;
+            } catch (ThrottledException e) {
+                throttled = true;
+            } catch (ClientErrorException e) {
+                breaker.onSuccess(permit, System.nanoTime() - start);
+                throw e;
+            } catch (TwitchException e) {
+                breaker.onFailure(permit);
+                throw e;
+            } catch (IOException e) {
+                breaker.onFailure(permit);
+                e.printStackTrace();
                 throw new TwitchException("Failed to get response from Twitch.");
+            } finally {
+                rateLimiter.release(throttled);
             }
-            HttpEntity entity = response.getEntity();
-            if (entity == null) {
+
+            if (retry > maxRetries) {
+                throw new TwitchException("Twitch rate limit exceeded.");
+            }
+            long backoffMs = rateLimiter.backoffMs(retry);
+            if (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMs) > deadline) {
+                throw new TwitchException("Twitch rate limit exceeded.");
+            }
+            try {
+                Thread.sleep(backoffMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
                 throw new TwitchException("Failed to get response from Twitch.");
             }
-            JSONObject jsonObject = new JSONObject(EntityUtils.toString(entity));
-            return jsonObject.getJSONArray("data").toString();
-        };
-
-        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
-            // Define the HTTP request, TOKEN and CLIENT_ID are used for user authentication on Twitch backend
-            HttpGet request = new HttpGet(url);
-            request.setHeader("Client-Id", clientId);
-            request.setHeader("Authorization", token);
-            return httpClient.execute(request, responseHandler);
-        } catch (IOException e) {
-            e.printStackTrace();
-            throw new TwitchException("Failed to get response from Twitch.");
         }
     }
 
-    // Convert JSON format data returned from Twitch to an Arraylist of Game objects
-    private List<Game> getGameList(String data) throws TwitchException {
-        JsonMapper mapper = new JsonMapper();
+    // Same as sendRequest(), without blocking: the rate limiter is waited for with acquireAsync(), the request is sent
+    // on the non-blocking client and a 429 is retried from a timer on the shared scheduler.
+    private <T> CompletableFuture<TwitchPage<T>> sendRequestAsync(CircuitBreaker breaker, long permit, String url,
+                                                                   ObjectReader reader, long deadline, int retry) {
+        CompletableFuture<TwitchPage<T>> result = new CompletableFuture<>();
+        rateLimiter.acquireAsync(priority, deadline).whenComplete((ignored, acquireError) -> {
+            if (acquireError != null) {
+                result.completeExceptionally(unwrap(acquireError));
+                return;
+            }
+            long start = System.nanoTime();
+            FutureCallback<HttpResponse> callback = new FutureCallback<HttpResponse>() {
+                @Override
+                public void completed(HttpResponse response) {
+                    TwitchPage<T> page;
+                    try {
+                        page = readPage(response, reader);
+                    } catch (ThrottledException e) {
+                        rateLimiter.release(true);
+                        retryAsync(breaker, permit, url, reader, deadline, retry, result);
+                        return;
+                    } catch (ClientErrorException e) {
+                        breaker.onSuccess(permit, System.nanoTime() - start);
+                        rateLimiter.release(false);
+                        result.completeExceptionally(e);
+                        return;
+                    } catch (TwitchException | IOException e) {
+                        failed(e);
+                        return;
+                    }
+                    breaker.onSuccess(permit, System.nanoTime() - start);
+                    rateLimiter.release(false);
+                    result.complete(page);
+                }
+
+                @Override
+                public void failed(Exception e) {
+                    breaker.onFailure(permit);
+                    rateLimiter.release(false);
+                    result.completeExceptionally(e instanceof TwitchException ? e
+                            : new TwitchException("Failed to get response from Twitch."));
+                }
+
+                @Override
+                public void cancelled() {
+                    rateLimiter.release(false);
+                    result.completeExceptionally(new TwitchException("Failed to get response from Twitch."));
+                }
+            };
+            try {
+                TwitchHttpTransport.getInstance().getAsyncClient().execute(createRequest(url), callback);
+            } catch (RuntimeException e) {
+                // E.g. the client has been closed because the webapp is shutting down.
+                callback.failed(e);
+            }
+        });
+        return result;
+    }
+
+    private <T> void retryAsync(CircuitBreaker breaker, long permit, String url, ObjectReader reader, long deadline,
+                                int retry, CompletableFuture<TwitchPage<T>> result) {
+        if (retry > maxRetries) {
+            result.completeExceptionally(new TwitchException("Twitch rate limit exceeded."));
+            return;
+        }
+        long backoffMs = rateLimiter.backoffMs(retry);
+        if (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMs) > deadline) {
+            result.completeExceptionally(new TwitchException("Twitch rate limit exceeded."));
+            return;
+        }
+        Runnable resend = () -> this.<T>sendRequestAsync(breaker, permit, url, reader, deadline, retry + 1)
+                .whenComplete((page, error) -> {
+                    if (error != null) {
+                        result.completeExceptionally(error);
+                    } else {
+                        result.complete(page);
+                    }
+                });
         try {
-            List<Game> gameList = Arrays.asList(mapper.readValue(data, Game[].class)); // List<T> is interface
-            return gameList;
-        } catch (JsonProcessingException e) {
-            e.printStackTrace();
+            AppExecutors.scheduler().schedule(resend, backoffMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(new TwitchException("Twitch rate limit exceeded."));
+        }
+    }
+
+    // Define the HTTP request, TOKEN and CLIENT_ID are used for user authentication on Twitch backend
+    private HttpGet createRequest(String url) {
+        HttpGet request = new HttpGet(url);
+        request.setHeader("Client-Id", clientId);
+        request.setHeader("Authorization", token);
+        return request;
+    }
+
+    // Decode the HTTP response body returned from Twitch straight from the stream, after passing the rate limit
+    // headers to the rate limiter. Used by both the blocking and the non-blocking client.
+    private static <T> TwitchPage<T> readPage(HttpResponse response, ObjectReader reader) throws IOException {
+        rateLimiter.update(getHeader(response, "Ratelimit-Limit"), getHeader(response, "Ratelimit-Remaining"),
+                getHeader(response, "Ratelimit-Reset"));
+        int status = response.getStatusLine().getStatusCode();
+        if (status == TOO_MANY_REQUESTS) {
+            throw new ThrottledException();
+        }
+        if (status != 200) {
+            System.out.println("Response Status: " + status);
+            if (status >= 400 && status < 500) {
+                throw new ClientErrorException();
+            }
             throw new TwitchException("Failed to get response from Twitch.");
         }
+        HttpEntity entity = response.getEntity();
+        if (entity == null) {
+            throw new TwitchException("Failed to get response from Twitch.");
+        }
+        try (InputStream body = entity.getContent()) {
+            return HelixResponseDecoder.decode(body, reader);
+        }
+    }
+
+    private static String getHeader(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return header == null ? null : header.getValue();
+    }
+
+    // Thrown by readPage() on a 429, never leaves sendRequest() or sendRequestAsync().
+    private static class ThrottledException extends TwitchException {
+        private ThrottledException() {
+            super("Twitch rate limit exceeded.");
+        }
+    }
+
+    // Thrown by readPage() on a 4xx other than 429. Twitch rejected the request itself, so the circuit breaker does
+    // not count it as a failure.
+    private static class ClientErrorException extends TwitchException {
+        private ClientErrorException() {
+            super("Failed to get response from Twitch.");
+        }
     }
 
-    // Integrate search() and getGameList() together, returns the top x popular games from Twitch.
+    // Send the request to Twitch and convert the returned JSON data to a page of Game objects
+    private TwitchPage<Game> getGamePage(TwitchEndpoint endpoint, String url) throws TwitchException {
+        return searchTwitch(endpoint, url, GAME_READER);
+    }
+
+    // Same as getGamePage(), without blocking.
+    private CompletableFuture<TwitchPage<Game>> getGamePageAsync(TwitchEndpoint endpoint, String url) {
+        return searchTwitchAsync(endpoint, url, GAME_READER);
+    }
+
+    // Send a batch of GameLookupBatcher. A batch URL is never requested twice, so unlike getGamePageAsync() it is not
+    // coalesced, and its page is not kept as a fallback. lookupGame() keeps one per game instead.
+    private CompletableFuture<TwitchPage<Game>> getGameBatchAsync(String url) {
+        CircuitBreaker breaker = breakers.get(TwitchEndpoint.GAMES);
+        long permit = breaker.tryAcquire();
+        if (permit == CircuitBreaker.REJECTED) {
+            CompletableFuture<TwitchPage<Game>> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new TwitchException("Twitch is unavailable."));
+            return failed;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(queueTimeoutMs);
+        return sendRequestAsync(breaker, permit, url, GAME_READER, deadline, 1);
+    }
+
+    // Returns the top x popular games. The list only changes every few minutes, so it is served from an in-process
+    // cache which is refreshed in the background.
     public List<Game> topGames(Integer limit) throws TwitchException {
+        TwitchPage<Game> page = topGamesCache.get(topGameCount(limit), priority);
+        if (page.isStale()) {
+            stale = true;
+        }
+        return page.getItems();
+    }
+
+    // Same as topGames(). The list is almost always cached and returned at once. Only a cold miss has to wait for
+    // the blocking loader, which then runs on the shared fetch pool instead of the caller's thread.
+    public CompletableFuture<List<Game>> topGamesAsync(Integer limit) {
+        int count = topGameCount(limit);
+        TwitchPage<Game> cached = topGamesCache.getCached(count);
+        if (cached != null) {
+            if (cached.isStale()) {
+                stale = true;
+            }
+            return CompletableFuture.completedFuture(cached.getItems());
+        }
+        return CompletableFuture.supplyAsync(() -> topGames(count), AppExecutors.fetchPool());
+    }
+
+    private int topGameCount(Integer limit) {
         if (limit <= 0) {
-            limit = gameLimit;
-        } else if (limit > 100) {
-            limit = gameLimitMax;
+            return gameLimit;
         }
-        return getGameList(searchTwitch(buildGameURL(null, limit, TOP_GAME_URL_PATTERN)));
+        // More than one page of games is fetched page by page, up to game_limit_max. A single page is always allowed,
+        // so asking for more never returns fewer games than asking for one full page.
+        if (limit <= TwitchPager.MAX_PAGE_SIZE) {
+            return limit;
+        }
+        return Math.max(TwitchPager.MAX_PAGE_SIZE, Math.min(limit, gameLimitMax));
     }
 
-    // Integrate search() and getGameList() together, returns the dedicated game based on the game name.
-    public Game searchGame(String gameName) throws TwitchException {
-        List<Game> gameList = getGameList(searchTwitch(buildGameURL(gameName, -1, GAME_SEARCH_URL_PATTERN)));
-        return gameList.size() > 0 ? gameList.get(0) : null;
+    // Integrate search() and getGamePage() together, returns the top x popular games from Twitch.
+    private TwitchPage<Game> fetchTopGames(int limit) throws TwitchException {
+        if (limit <= TwitchPager.MAX_PAGE_SIZE) {
+            return fetchTopGamePage(null, limit);
+        }
+        List<Game> games = new ArrayList<>(limit);
+        try (TwitchPager<Game> pager = pageTopGames(limit)) {
+            pager.forEachRemaining(games::add);
+            return new TwitchPage<>(games, null, pager.isStale());
+        }
     }
 
-    // Similar to buildGameURL, build Search URL that will be used when calling Twitch API.
-    // e.g. https://api.twitch.tv/helix/clips?game_id=12924.
-    private String buildSearchURL(String gameId, String url, int limit) {
+    private TwitchPage<Game> fetchTopGamePage(String cursor, int first) throws TwitchException {
+        return getGamePage(TwitchEndpoint.TOP_GAMES,
+                withCursor(buildGameURL(null, first, TOP_GAME_URL_PATTERN), cursor));
+    }
+
+    private CompletableFuture<TwitchPage<Game>> fetchTopGamePageAsync(String cursor, int first) {
+        return getGamePageAsync(TwitchEndpoint.TOP_GAMES,
+                withCursor(buildGameURL(null, first, TOP_GAME_URL_PATTERN), cursor));
+    }
+
+    // Returns a lazy iterator over the top maxItems games, fetched page by page. Unlike topGames() it is not cached,
+    // it is meant for crawls that need more than one page. Close the pager when stopping early.
+    public TwitchPager<Game> pageTopGames(int maxItems) {
+        return new TwitchPager<>(this::fetchTopGamePageAsync, maxItems, waitTimeoutMs);
+    }
+
+    // Returns a lazy iterator over up to maxItems items of the given type based on game ID, fetched page by page. The
+    // pages are not cached. Close the pager when stopping early.
+    public TwitchPager<Item> pageByType(String gameId, ItemType type, int maxItems) {
+        return new TwitchPager<>((cursor, first) -> fetchItemPageAsync(gameId, type, first, cursor), maxItems,
+                waitTimeoutMs);
+    }
+
+    // Append the cursor of the previous page to a paginated Helix URL, e.g. ...&after=eyJiIjpudWxs...
+    private static String withCursor(String url, String cursor) {
+        if (cursor == null) {
+            return url;
+        }
         try {
-            gameId = URLEncoder.encode(gameId, "UTF-8");
+            return url + "&after=" + URLEncoder.encode(cursor, "UTF-8");
         } catch (UnsupportedEncodingException e) {
             throw new TwitchException("Failed to get response from Twitch.");
         }
-        return String.format(url, gameId, limit);
     }
 
-    // Similar to getGameList, convert the json data returned from Twitch to a list of Item objects.
-    private List<Item> getItemList(String data) throws TwitchException {
-        ObjectMapper mapper = new JsonMapper();
+    // Returns the counters of the caches, the request coalescing, the rate limiter and the circuit breakers in front of
+    // Twitch.
+    public static Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("top_games_cache", topGamesCache.getStats());
+        result.put("search_cache", searchCache.getStats());
+        result.put("coalescing", inFlightRequests.getStats());
+        result.put("rate_limiter", rateLimiter.getStats());
+        Map<String, Object> breakerStats = new LinkedHashMap<>();
+        for (Map.Entry<TwitchEndpoint, CircuitBreaker> each: breakers.entrySet()) {
+            breakerStats.put(each.getKey().name().toLowerCase(), each.getValue().getStats());
+        }
+        result.put("circuit_breakers", breakerStats);
+        result.put("last_known_good", lastKnownGood.getStats());
+        result.put("game_lookups_by_id", gamesById.getStats());
+        result.put("game_lookups_by_name", gamesByName.getStats());
+        return result;
+    }
+
+    // Returns the dedicated game based on the game name, or null if there is no such game. Concurrent lookups are
+    // merged into one Twitch request by GameLookupBatcher.
+    public Game searchGame(String gameName) throws TwitchException {
+        return searchGames(Collections.singletonList(gameName)).get(gameName);
+    }
+
+    // Returns the games with the given names, keyed by the name as passed in. Unknown names are left out. Names are
+    // matched case-insensitively, the same way Twitch does.
+    public Map<String, Game> searchGames(Collection<String> gameNames) throws TwitchException {
+        return lookupGames(gamesByName, gameNames, true);
+    }
+
+    // Returns the games with the given ids, keyed by id. Unknown ids are left out.
+    public Map<String, Game> getGamesByIds(Collection<String> gameIds) throws TwitchException {
+        return lookupGames(gamesById, gameIds, false);
+    }
+
+    // Same as searchGame(), without blocking. The future fails with a TwitchException if the lookup does not complete
+    // within search_timeout_ms.
+    public CompletableFuture<Game> searchGameAsync(String gameName) {
+        CompletableFuture<Game> result = lookupGame(gamesByName, gameName, true);
+        return AppExecutors.withTimeout(result, searchTimeoutMs,
+                () -> new TwitchException("Timed out getting response from Twitch."));
+    }
+
+    // Queue all values first, so they can end up in the same batches, then wait for them within search_timeout_ms.
+    private Map<String, Game> lookupGames(GameLookupBatcher batcher, Collection<String> values, boolean byName)
+            throws TwitchException {
+        Map<String, CompletableFuture<Game>> futures = new LinkedHashMap<>();
+        for (String value: values) {
+            futures.put(value, lookupGame(batcher, value, byName));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(searchTimeoutMs);
+        Map<String, Game> result = new LinkedHashMap<>();
         try {
-            return Arrays.asList(mapper.readValue(data, Item[].class));
-        } catch (JsonProcessingException e) {
+            for (Map.Entry<String, CompletableFuture<Game>> each: futures.entrySet()) {
+                Game game = each.getValue().get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (game != null) {
+                    result.put(each.getKey(), game);
+                }
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TwitchException) {
+                throw (TwitchException) e.getCause();
+            }
+            e.printStackTrace();
+            throw new TwitchException("Failed to get response from Twitch.");
+        } catch (TimeoutException e) {
+            throw new TwitchException("Timed out getting response from Twitch.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new TwitchException("Failed to get response from Twitch.");
         }
+        return result;
+    }
+
+    // Look up one game through the batcher, null if Twitch does not know it. The game is kept as the last known good
+    // page of its own lookup URL, e.g. games?name=Fortnite, and served from there while Twitch fails, the same way
+    // searchTwitch() does for every other URL.
+    private CompletableFuture<Game> lookupGame(GameLookupBatcher batcher, String value, boolean byName) {
+        return batcher.lookup(value, priority).handle((page, error) -> {
+            String url = batcher.url(value);
+            if (error != null) {
+                return findGame(fallback(url, unwrap(error)), value, byName);
+            }
+            Game game = findGame(page, value, byName);
+            if (game != null) {
+                lastKnownGood.put(url, new TwitchPage<>(Collections.singletonList(game), null, false));
+            }
+            return game;
+        });
     }
 
-    // Returns the top x streams based on game ID.
-    private List<Item> searchStreams (String gameId, int limit) {
-        List<Item> itemList = getItemList(searchTwitch(buildSearchURL(gameId, STREAM_SEARCH_URL_PATTERN, limit)));
-        for(Item item: itemList) {
-            item.setType(ItemType.STREAM);
+    // Pick the game with the given id or name from the page of a batch, or null if Twitch does not know it.
+    private static Game findGame(TwitchPage<Game> page, String value, boolean byName) {
+        for (Game game: page.getItems()) {
+            if (byName ? game.getName().equalsIgnoreCase(value) : game.getId().equals(value)) {
+                return game;
+            }
         }
-        return itemList;
+        return null;
     }
 
-    // Returns the top x clips based on game ID.
-    private List<Item> searchVideos (String gameId, int limit) {
-        List<Item> itemList = getItemList(searchTwitch(buildSearchURL(gameId, VIDEO_SEARCH_URL_PATTERN, limit)));
-        for(Item item: itemList) {
-            item.setType(ItemType.VIDEO);
+    // Similar to buildGameURL, build Search URL that will be used when calling Twitch API.
+    // e.g. https://api.twitch.tv/helix/clips?game_id=12924.
+    private String buildSearchURL(String gameId, String url, int limit) {
+        try {
+            gameId = URLEncoder.encode(gameId, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new TwitchException("Failed to get response from Twitch.");
         }
-        return itemList;    }
+        return String.format(url, gameId, limit);
+    }
 
-    // Returns the top x videos based on game ID.
-    private List<Item> searchClips (String gameId, int limit) {
-        List<Item> itemList = getItemList(searchTwitch(buildSearchURL(gameId, CLIP_SEARCH_URL_PATTERN, limit)));
-        for(Item item: itemList) {
-            item.setType(ItemType.CLIP);
+    // Similar to getGamePage, send the request to Twitch and convert the returned JSON data to a page of Item objects.
+    private TwitchPage<Item> getItemPage(TwitchEndpoint endpoint, String url) throws TwitchException {
+        return searchTwitch(endpoint, url, ITEM_READER);
+    }
+
+    // Returns the endpoint that serves items of the given type.
+    private static TwitchEndpoint itemEndpoint(ItemType type) {
+        switch (type) {
+            case STREAM:
+                return TwitchEndpoint.STREAMS;
+            case VIDEO:
+                return TwitchEndpoint.VIDEOS;
+            default:
+                return TwitchEndpoint.CLIPS;
         }
-        return itemList;
     }
 
-    public List<Item> searchByType(String gameId, ItemType type, int limit) {
-        List<Item> itemList = Collections.emptyList();
+    // Returns the URL of the top x items of the given type based on game ID, after the given cursor if it is not null.
+    private String buildItemURL(String gameId, ItemType type, int limit, String cursor) {
+        String pattern;
         switch (type) {
             case STREAM:
-                itemList = searchStreams(gameId, limit);
+                pattern = STREAM_SEARCH_URL_PATTERN;
                 break;
             case VIDEO:
-                itemList = searchVideos(gameId, limit);
+                pattern = VIDEO_SEARCH_URL_PATTERN;
                 break;
-            case CLIP:
-                itemList = searchClips(gameId, limit);
+            default:
+                pattern = CLIP_SEARCH_URL_PATTERN;
                 break;
         }
+        return withCursor(buildSearchURL(gameId, pattern, limit), cursor);
+    }
+
+    // Returns the top x items of the given type based on game ID. Results are cached for a short time, since the same
+    // games are searched over and over by /search and the recommendation functions.
+    public List<Item> searchByType(String gameId, ItemType type, int limit) {
+        return searchCache.get(gameId, type, limit, this::fetchByType);
+    }
+
+    // Same as searchByType(), without blocking.
+    public CompletableFuture<List<Item>> searchByTypeAsync(String gameId, ItemType type, int limit) {
+        return searchCache.getAsync(gameId, type, limit, this::fetchByTypeAsync);
+    }
+
+    // Stale pages keep their flag, so the search cache does not store them.
+    private TwitchPage<Item> fetchByType(String gameId, ItemType type, int limit) throws TwitchException {
+        return fetchItemPage(gameId, type, limit, null);
+    }
+
+    private CompletableFuture<TwitchPage<Item>> fetchByTypeAsync(String gameId, ItemType type, int limit) {
+        return fetchItemPageAsync(gameId, type, limit, null);
+    }
+
+    private CompletableFuture<TwitchPage<Item>> fetchItemPageAsync(String gameId, ItemType type, int limit,
+                                                                   String cursor) {
+        String url;
+        try {
+            url = buildItemURL(gameId, type, limit, cursor);
+        } catch (TwitchException e) {
+            CompletableFuture<TwitchPage<Item>> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        return this.<Item>searchTwitchAsync(itemEndpoint(type), url, ITEM_READER)
+                .thenApply(page -> withGameAndType(page, gameId, type));
+    }
+
+    private TwitchPage<Item> fetchItemPage(String gameId, ItemType type, int limit, String cursor)
+            throws TwitchException {
+        TwitchPage<Item> page = getItemPage(itemEndpoint(type), buildItemURL(gameId, type, limit, cursor));
+        return withGameAndType(page, gameId, type);
+    }
 
-        // Update gameId for all items. GameId is used by recommendation function
-        for (Item item: itemList) {
-            item.setGameId(gameId);
+    // Update type and gameId for all items. GameId is used by recommendation function. Items are immutable, so they
+    // are rebuilt with both fields set.
+    private static TwitchPage<Item> withGameAndType(TwitchPage<Item> page, String gameId, ItemType type) {
+        List<Item> result = new ArrayList<>(page.getItems().size());
+        for (Item item: page.getItems()) {
+            result.add(new Item.Builder()
+                    .id(item.getId())
+                    .title(item.getTitle())
+                    .url(item.getUrl())
+                    .thumbnailUrl(item.getThumbnailUrl())
+                    .broadcasterName(item.getBroadcasterName())
+                    .gameId(gameId)
+                    .type(type)
+                    .build());
         }
-        return itemList;
+        return new TwitchPage<>(Collections.unmodifiableList(result), page.getCursor(), page.isStale());
     }
 
     public Map<String, List<Item>> searchItems(String gameId, int limit) throws TwitchException {
         if (limit == 0) {
             limit = searchLimit;
         }
+        if (concurrentSearch) {
+            return searchItemsConcurrently(gameId, limit);
+        }
         Map<String, List<Item>> map = new HashMap<>();
         for (ItemType type: ItemType.values()) {
             map.put(type.toString(), searchByType(gameId, type, limit));
         }
         return map;
     }
+
+    // Same as the sequential search in searchItems(), but sends the Stream, Video and Clip requests to Twitch in
+    // parallel on the shared fetch pool, so the whole search costs about one round trip. All requests have to finish
+    // within search_timeout_ms, otherwise the outstanding ones are cancelled.
+    private Map<String, List<Item>> searchItemsConcurrently(String gameId, int limit) throws TwitchException {
+        ExecutorService executor = AppExecutors.fetchPool();
+        Map<ItemType, Future<List<Item>>> futures = new EnumMap<>(ItemType.class);
+        for (ItemType type: ItemType.values()) {
+            futures.put(type, executor.submit(() -> searchByType(gameId, type, limit)));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(searchTimeoutMs);
+        Map<String, List<Item>> map = new HashMap<>();
+        try {
+            for (Map.Entry<ItemType, Future<List<Item>>> each: futures.entrySet()) {
+                long remaining = deadline - System.nanoTime();
+                map.put(each.getKey().toString(), each.getValue().get(remaining, TimeUnit.NANOSECONDS));
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TwitchException) {
+                throw (TwitchException) e.getCause();
+            }
+            e.printStackTrace();
+            throw new TwitchException("Failed to get response from Twitch.");
+        } catch (TimeoutException e) {
+            throw new TwitchException("Timed out getting response from Twitch.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TwitchException("Failed to get response from Twitch.");
+        } finally {
+            // Never interrupt a running search, it may be the single-flight leader of other requests.
+            for (Future<List<Item>> future: futures.values()) {
+                future.cancel(false);
+            }
+        }
+        return map;
+    }
+
+    // Same as searchItems(), without blocking. The requests for all types are sent at once, the future fails with a
+    // TwitchException if they do not all complete within search_timeout_ms.
+    public CompletableFuture<Map<String, List<Item>>> searchItemsAsync(String gameId, int limit) {
+        int itemLimit = limit == 0 ? searchLimit : limit;
+        Map<ItemType, CompletableFuture<List<Item>>> futures = new EnumMap<>(ItemType.class);
+        for (ItemType type: ItemType.values()) {
+            futures.put(type, searchByTypeAsync(gameId, type, itemLimit));
+        }
+        CompletableFuture<Map<String, List<Item>>> result = CompletableFuture
+                .allOf(futures.values().toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> {
+                    Map<String, List<Item>> map = new HashMap<>();
+                    for (Map.Entry<ItemType, CompletableFuture<List<Item>>> each: futures.entrySet()) {
+                        map.put(each.getKey().toString(), each.getValue().join());
+                    }
+                    return map;
+                });
+        return AppExecutors.withTimeout(result, searchTimeoutMs,
+                () -> new TwitchException("Timed out getting response from Twitch."));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,7 @@
+package com.laioffer.jupiter.external;
+
+// The Helix endpoints called by TwitchClient. Each one has its own circuit breaker, since e.g. the clips endpoint can
+// fail while streams still work.
+enum TwitchEndpoint {
+    TOP_GAMES, GAMES, STREAMS, VIDEOS, CLIPS
+}
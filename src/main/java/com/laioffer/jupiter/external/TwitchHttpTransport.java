@@ -0,0 +1,162 @@
+package com.laioffer.jupiter.external;
+
+import com.laioffer.jupiter.util.AppConfig;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.pool.PoolStats;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Shared HTTP transport used for every call to the Twitch backend. The underlying client keeps a pool of keep-alive
+// connections, so repeated Helix calls reuse the same TCP/TLS session instead of doing a new handshake each time.
+// The client is thread-safe and there is exactly one instance per webapp.
+//
+// Next to it there is a non-blocking client for the CompletableFuture API of TwitchClient. It runs on a few I/O
+// reactor threads and completes requests on callbacks, so a request waiting for Twitch does not hold any thread. It
+// has its own connection pool with the same limits and is only started when it is first used.
+public class TwitchHttpTransport {
+    private static volatile TwitchHttpTransport instance;
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private volatile CloseableHttpAsyncClient asyncClient;
+    private PoolingNHttpClientConnectionManager asyncConnectionManager;
+
+    private TwitchHttpTransport() {
+        AppConfig config = AppConfig.get();
+        int maxTotal = config.getInt("http_max_total", 50);
+        int maxPerRoute = config.getInt("http_max_per_route", 20);
+        int connectTimeout = config.getInt("http_connect_timeout_ms", 2000);
+        int readTimeout = config.getInt("http_read_timeout_ms", 5000);
+        long keepAlive = config.getLong("http_keep_alive_ms", 30000);
+
+        connectionManager = new PoolingHttpClientConnectionManager(keepAlive, TimeUnit.MILLISECONDS);
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        // Re-check connections that have been idle for a while before handing them out again, the server may have
+        // closed them in the meantime.
+        connectionManager.setValidateAfterInactivity(2000);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setSocketTimeout(readTimeout)
+                .setConnectionRequestTimeout(connectTimeout)
+                .build();
+
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                // Twitch usually sends no Keep-Alive header, fall back to the configured time in that case.
+                .setKeepAliveStrategy((response, context) -> keepAlive)
+                .evictExpiredConnections()
+                .evictIdleConnections(keepAlive, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    public static TwitchHttpTransport getInstance() {
+        if (instance == null) {
+            synchronized (TwitchHttpTransport.class) {
+                if (instance == null) {
+                    instance = new TwitchHttpTransport();
+                }
+            }
+        }
+        return instance;
+    }
+
+    public CloseableHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    public CloseableHttpAsyncClient getAsyncClient() throws TwitchException {
+        if (asyncClient == null) {
+            synchronized (this) {
+                if (asyncClient == null) {
+                    asyncClient = createAsyncClient();
+                }
+            }
+        }
+        return asyncClient;
+    }
+
+    private CloseableHttpAsyncClient createAsyncClient() throws TwitchException {
+        AppConfig config = AppConfig.get();
+        int connectTimeout = config.getInt("http_connect_timeout_ms", 2000);
+        int readTimeout = config.getInt("http_read_timeout_ms", 5000);
+        long keepAlive = config.getLong("http_keep_alive_ms", 30000);
+        IOReactorConfig reactorConfig = IOReactorConfig.custom()
+                .setIoThreadCount(config.getInt("http_async_io_threads", 2))
+                .setConnectTimeout(connectTimeout)
+                .setSoTimeout(readTimeout)
+                .build();
+        try {
+            asyncConnectionManager = new PoolingNHttpClientConnectionManager(
+                    new DefaultConnectingIOReactor(reactorConfig));
+        } catch (IOReactorException e) {
+            e.printStackTrace();
+            throw new TwitchException("Failed to start the Twitch HTTP client.");
+        }
+        asyncConnectionManager.setMaxTotal(config.getInt("http_max_total", 50));
+        asyncConnectionManager.setDefaultMaxPerRoute(config.getInt("http_max_per_route", 20));
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setSocketTimeout(readTimeout)
+                .setConnectionRequestTimeout(connectTimeout)
+                .build();
+        CloseableHttpAsyncClient client = HttpAsyncClients.custom()
+                .setConnectionManager(asyncConnectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy((response, context) -> keepAlive)
+                .build();
+        client.start();
+        return client;
+    }
+
+    // Returns the current state of the connection pool, e.g. {"leased": 3, "available": 5, "pending": 0, "max": 50},
+    // plus the async_* counters of the non-blocking client once it has been started.
+    public Map<String, Object> getStats() {
+        PoolStats stats = connectionManager.getTotalStats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("leased", stats.getLeased());
+        result.put("available", stats.getAvailable());
+        result.put("pending", stats.getPending());
+        result.put("max", stats.getMax());
+        if (asyncClient != null) {
+            PoolStats asyncStats = asyncConnectionManager.getTotalStats();
+            result.put("async_leased", asyncStats.getLeased());
+            result.put("async_available", asyncStats.getAvailable());
+            result.put("async_pending", asyncStats.getPending());
+        }
+        return result;
+    }
+
+    // Close all pooled connections. Called once when the webapp is stopped.
+    public static void shutdown() {
+        synchronized (TwitchHttpTransport.class) {
+            if (instance == null) {
+                return;
+            }
+            try {
+                instance.httpClient.close();
+                if (instance.asyncClient != null) {
+                    instance.asyncClient.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            instance = null;
+        }
+    }
+}
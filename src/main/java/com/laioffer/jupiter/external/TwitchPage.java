@@ -0,0 +1,34 @@
+package com.laioffer.jupiter.external;
+
+import java.util.List;
+
+// One page of a Helix response: the objects of the "data" array and the cursor of the next page, which is null on
+// the last page. A stale page was not fetched for this request, it is the last known good response for the same URL
+// served while Twitch is failing.
+public class TwitchPage<T> {
+    private final List<T> items;
+    private final String cursor;
+    private final boolean stale;
+
+    TwitchPage(List<T> items, String cursor) {
+        this(items, cursor, false);
+    }
+
+    TwitchPage(List<T> items, String cursor, boolean stale) {
+        this.items = items;
+        this.cursor = cursor;
+        this.stale = stale;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public boolean isStale() {
+        return stale;
+    }
+}
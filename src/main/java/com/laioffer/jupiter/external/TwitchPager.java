@@ -0,0 +1,167 @@
+package com.laioffer.jupiter.external;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Lazy iterator over up to maxItems results of a paginated Helix endpoint. A page is only requested when the
+// iterator needs it, following the pagination cursor of the previous page. Once the caller has consumed half of the
+// current page, the next one is requested ahead on the non-blocking Twitch client, so a steady consumer rarely waits.
+// No thread is tied up by the prefetch, so a pager can be used from a task of the shared fetch pool without
+// waiting for another task of the same pool. Waiting for a page is bounded by waitTimeoutMs. Pages are never
+// requested beyond maxItems, so a caller that stops early causes at most one request for results it will not read.
+//
+// Only the current page is kept in memory. Not thread-safe, use one pager per consumer.
+public class TwitchPager<T> implements Iterator<T>, AutoCloseable {
+    // Helix returns at most 100 results per page.
+    static final int MAX_PAGE_SIZE = 100;
+
+    interface PageFetcher<T> {
+        // Request up to first results, starting after the given cursor, or from the beginning if it is null. Must
+        // not block, the returned future completes once the page has been received.
+        CompletableFuture<TwitchPage<T>> fetch(String cursor, int first);
+    }
+
+    private final PageFetcher<T> fetcher;
+    private final int maxItems;
+    private final long waitTimeoutMs;
+
+    private List<T> current = Collections.emptyList();
+    private int index;
+    private String cursor;
+    private boolean lastPage;
+    private int requested;
+    private int returned;
+    private int pages;
+    private boolean stale;
+    private CompletableFuture<TwitchPage<T>> prefetch;
+
+    TwitchPager(PageFetcher<T> fetcher, int maxItems, long waitTimeoutMs) {
+        this.fetcher = fetcher;
+        this.maxItems = maxItems;
+        this.waitTimeoutMs = waitTimeoutMs;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (returned >= maxItems) {
+            return false;
+        }
+        while (index >= current.size()) {
+            if (!advance()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T item = current.get(index++);
+        returned++;
+        if (prefetch == null && index >= (current.size() + 1) / 2 && hasMorePages()) {
+            prefetch = request();
+        }
+        return item;
+    }
+
+    private boolean hasMorePages() {
+        return !lastPage && requested < maxItems;
+    }
+
+    private int nextPageSize() {
+        return Math.min(MAX_PAGE_SIZE, maxItems - requested);
+    }
+
+    // Request the page after the current one. A fetcher that fails right away fails the returned future, so the
+    // error surfaces in advance() instead of in the next() call that started the prefetch.
+    private CompletableFuture<TwitchPage<T>> request() {
+        int first = nextPageSize();
+        requested += first;
+        try {
+            return fetcher.fetch(cursor, first);
+        } catch (RuntimeException e) {
+            CompletableFuture<TwitchPage<T>> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    // Move to the next page, waiting for the prefetch if there is one. Returns false after the last page.
+    private boolean advance() {
+        TwitchPage<T> page;
+        if (prefetch != null) {
+            page = await(prefetch);
+            prefetch = null;
+        } else if (hasMorePages()) {
+            page = await(request());
+        } else {
+            return false;
+        }
+        pages++;
+        stale |= page.isStale();
+        current = page.getItems();
+        index = 0;
+        cursor = page.getCursor();
+        if (cursor == null || current.isEmpty()) {
+            lastPage = true;
+        }
+        return !current.isEmpty();
+    }
+
+    private TwitchPage<T> await(CompletableFuture<TwitchPage<T>> future) throws TwitchException {
+        try {
+            return future.get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            throw new TwitchException("Timed out getting response from Twitch.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new TwitchException("Failed to get response from Twitch.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TwitchException("Failed to get response from Twitch.");
+        }
+    }
+
+    // Returns the number of pages fetched so far.
+    public int getPageCount() {
+        return pages;
+    }
+
+    // Returns whether any page so far was a stale fallback, see TwitchClient.isStale().
+    public boolean isStale() {
+        return stale;
+    }
+
+    // The remaining results as a sequential stream. Closing the stream closes the pager.
+    public Stream<T> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED), false)
+                .onClose(this::close);
+    }
+
+    // Stop iterating. A prefetch that is still running completes unused.
+    @Override
+    public void close() {
+        lastPage = true;
+        current = Collections.emptyList();
+        if (prefetch != null) {
+            prefetch.cancel(false);
+            prefetch = null;
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package com.laioffer.jupiter.external;
+
+import com.laioffer.jupiter.util.AppConfig;
+import com.laioffer.jupiter.util.AppExecutors;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Client-side copy of the Helix rate limit bucket, shared by every request to Twitch. Each request takes one point
+// before it is sent. The bucket follows the Ratelimit-Limit, Ratelimit-Remaining and Ratelimit-Reset headers of every
+// response, and refills at the rate that gets it from the remaining points back to full at the reset time.
+//
+// Callers that find the bucket empty queue until a point is available or their deadline has passed. Waiters are
+// served by priority and then in arrival order, so interactive requests always go first. Background requests also
+// leave the last twitch_rate_limit_reserve points to interactive ones.
+//
+// acquireAsync() queues the same way without blocking a thread: its future is completed by whoever frees up a point
+// or a slot, or by a timer on the shared scheduler.
+//
+// The number of requests in flight is limited as well. The limit is halved on every 429 and grows back by one with
+// every successful response, up to twitch_max_concurrency.
+class TwitchRateLimiter {
+    private static final long MINUTE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final int reserve;
+    private final int maxConcurrency;
+    private final long retryBaseMs;
+    private final long retryMaxMs;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<>(
+            Comparator.comparing((Waiter waiter) -> waiter.priority).thenComparingLong(waiter -> waiter.sequence));
+    private long nextSequence;
+    private long wakeupAt;
+    private boolean wakeupScheduled;
+
+    // All guarded by lock.
+    private int limit;
+    private double tokens;
+    private double refillPerNano;
+    private long refilledAt;
+    private int concurrencyLimit;
+    private int inFlight;
+
+    private long granted;
+    private long throttled;
+    private long retries;
+    private long timeouts;
+    private long waitNanos;
+
+    private static class Waiter {
+        private final TwitchClient.Priority priority;
+        private final long sequence;
+        private final long start = System.nanoTime();
+        // Null for a thread blocked in acquire().
+        private final CompletableFuture<Void> future;
+
+        private Waiter(TwitchClient.Priority priority, long sequence, CompletableFuture<Void> future) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.future = future;
+        }
+    }
+
+    TwitchRateLimiter() {
+        AppConfig config = AppConfig.get();
+        // Until the first response tells us better, assume the default Helix bucket.
+        limit = config.getInt("twitch_rate_limit", 800);
+        reserve = config.getInt("twitch_rate_limit_reserve", 80);
+        maxConcurrency = config.getInt("twitch_max_concurrency", config.getInt("http_max_per_route", 20));
+        retryBaseMs = config.getLong("twitch_retry_base_ms", 250);
+        retryMaxMs = config.getLong("twitch_retry_max_ms", 5000);
+        tokens = limit;
+        refillPerNano = (double) limit / MINUTE_NANOS;
+        refilledAt = System.nanoTime();
+        concurrencyLimit = maxConcurrency;
+    }
+
+    // Wait until the request may be sent. Every successful call must be followed by exactly one call to release().
+    void acquire(TwitchClient.Priority priority, long deadlineNanos) throws TwitchException {
+        List<CompletableFuture<Void>> ready = Collections.emptyList();
+        lock.lock();
+        try {
+            Waiter waiter = new Waiter(priority, nextSequence++, null);
+            waiters.add(waiter);
+            try {
+                while (true) {
+                    long now = System.nanoTime();
+                    refill(now);
+                    if (tryGrant(waiter, now)) {
+                        return;
+                    }
+                    long remaining = deadlineNanos - now;
+                    if (remaining <= 0) {
+                        timeouts++;
+                        throw new TwitchException("Timed out waiting for the Twitch rate limit.");
+                    }
+                    // A released slot or a header update signals the condition, refilled points do not.
+                    double needed = needed(priority);
+                    if (tokens < needed && refillPerNano > 0) {
+                        remaining = Math.min(remaining, (long) ((needed - tokens) / refillPerNano) + 1);
+                    }
+                    changed.awaitNanos(remaining);
+                }
+            } finally {
+                // Let the next waiter check whether it is at the head of the queue now.
+                waiters.remove(waiter);
+                changed.signalAll();
+                ready = dispatch();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TwitchException("Failed to get response from Twitch.");
+        } finally {
+            lock.unlock();
+            complete(ready);
+        }
+    }
+
+    // Same as acquire(), but returns at once. The future completes when the request may be sent, or fails with a
+    // TwitchException at the deadline. It may complete on the thread of another request or on the scheduler, so
+    // callbacks must not block.
+    CompletableFuture<Void> acquireAsync(TwitchClient.Priority priority, long deadlineNanos) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        Waiter waiter;
+        List<CompletableFuture<Void>> ready;
+        boolean queued;
+        lock.lock();
+        try {
+            waiter = new Waiter(priority, nextSequence++, future);
+            waiters.add(waiter);
+            ready = dispatch();
+            queued = waiters.contains(waiter);
+        } finally {
+            lock.unlock();
+        }
+        complete(ready);
+        if (queued) {
+            schedule(() -> expire(waiter), deadlineNanos - System.nanoTime());
+        }
+        return future;
+    }
+
+    private void expire(Waiter waiter) {
+        List<CompletableFuture<Void>> ready;
+        boolean expired;
+        lock.lock();
+        try {
+            expired = waiters.remove(waiter);
+            if (expired) {
+                timeouts++;
+                changed.signalAll();
+            }
+            ready = dispatch();
+        } finally {
+            lock.unlock();
+        }
+        if (expired) {
+            waiter.future.completeExceptionally(new TwitchException("Timed out waiting for the Twitch rate limit."));
+        }
+        complete(ready);
+    }
+
+    private double needed(TwitchClient.Priority priority) {
+        return priority == TwitchClient.Priority.BACKGROUND ? 1 + Math.min(reserve, limit / 2) : 1;
+    }
+
+    // Take a point and a slot for the waiter if it is at the head of the queue and both are available. Lock held.
+    private boolean tryGrant(Waiter waiter, long now) {
+        if (waiters.peek() != waiter || inFlight >= concurrencyLimit || tokens < needed(waiter.priority)) {
+            return false;
+        }
+        tokens -= 1;
+        inFlight++;
+        granted++;
+        waitNanos += now - waiter.start;
+        return true;
+    }
+
+    // Grant as many async waiters at the head of the queue as possible and return their futures, which the caller
+    // completes after releasing the lock. If the head waits for points, a timer retries once they have refilled.
+    private List<CompletableFuture<Void>> dispatch() {
+        List<CompletableFuture<Void>> ready = Collections.emptyList();
+        long now = System.nanoTime();
+        refill(now);
+        Waiter head;
+        while ((head = waiters.peek()) != null && head.future != null && tryGrant(head, now)) {
+            waiters.poll();
+            if (ready.isEmpty()) {
+                ready = new ArrayList<>();
+            }
+            ready.add(head.future);
+        }
+        if (head != null && head.future != null && inFlight < concurrencyLimit && refillPerNano > 0) {
+            long delay = (long) ((needed(head.priority) - tokens) / refillPerNano) + 1;
+            if (!wakeupScheduled || now + delay < wakeupAt) {
+                wakeupScheduled = true;
+                wakeupAt = now + delay;
+                schedule(this::wakeup, delay);
+            }
+        }
+        return ready;
+    }
+
+    private void wakeup() {
+        List<CompletableFuture<Void>> ready;
+        lock.lock();
+        try {
+            wakeupScheduled = false;
+            ready = dispatch();
+        } finally {
+            lock.unlock();
+        }
+        complete(ready);
+    }
+
+    private static void schedule(Runnable task, long delayNanos) {
+        try {
+            AppExecutors.scheduler().schedule(task, Math.max(0, delayNanos), TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // The webapp is shutting down.
+        }
+    }
+
+    private static void complete(List<CompletableFuture<Void>> ready) {
+        for (CompletableFuture<Void> future: ready) {
+            future.complete(null);
+        }
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(limit, tokens + (now - refilledAt) * refillPerNano);
+        refilledAt = now;
+    }
+
+    // Bring the bucket in line with the rate limit headers of a response. Any header may be missing, then the local
+    // count is kept.
+    void update(String limitHeader, String remainingHeader, String resetHeader) {
+        Long newLimit = parse(limitHeader);
+        Long remaining = parse(remainingHeader);
+        // Epoch seconds at which the bucket is full again.
+        Long reset = parse(resetHeader);
+        List<CompletableFuture<Void>> ready;
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            refill(now);
+            if (newLimit != null && newLimit > 0) {
+                limit = (int) Math.min(newLimit, Integer.MAX_VALUE);
+            }
+            if (remaining != null) {
+                // Twitch has not seen the other requests in flight yet, they already took their points here.
+                tokens = Math.max(0, Math.min(limit, remaining - (inFlight - 1)));
+                long untilReset = reset == null ? 0
+                        : TimeUnit.MILLISECONDS.toNanos(reset * 1000L - System.currentTimeMillis());
+                if (untilReset > 0 && remaining < limit) {
+                    refillPerNano = (double) (limit - remaining) / untilReset;
+                } else {
+                    refillPerNano = (double) limit / MINUTE_NANOS;
+                }
+            }
+            changed.signalAll();
+            ready = dispatch();
+        } finally {
+            lock.unlock();
+        }
+        complete(ready);
+    }
+
+    private static Long parse(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Called for every acquired request once its response has been handled. A throttled request empties the bucket
+    // and halves the concurrency limit, a successful one raises the limit again.
+    void release(boolean wasThrottled) {
+        List<CompletableFuture<Void>> ready;
+        lock.lock();
+        try {
+            inFlight--;
+            if (wasThrottled) {
+                throttled++;
+                tokens = 0;
+                concurrencyLimit = Math.max(1, concurrencyLimit / 2);
+            } else if (concurrencyLimit < maxConcurrency) {
+                concurrencyLimit++;
+            }
+            changed.signalAll();
+            ready = dispatch();
+        } finally {
+            lock.unlock();
+        }
+        complete(ready);
+    }
+
+    // Returns how long to wait before the given retry (1, 2, ...) of a throttled request: exponential backoff, with a
+    // random half of it as jitter so requests throttled together do not come back together.
+    long backoffMs(int retry) {
+        long ceiling = Math.min(retryMaxMs, retryBaseMs << Math.min(retry - 1, 20));
+        lock.lock();
+        try {
+            retries++;
+        } finally {
+            lock.unlock();
+        }
+        return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+    }
+
+    // Returns the state of the bucket, e.g. {"limit": 800, "tokens": 640, "in_flight": 3, "waiting": 0, ...}
+    Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            refill(System.nanoTime());
+            result.put("limit", limit);
+            result.put("tokens", (long) tokens);
+            result.put("concurrency_limit", concurrencyLimit);
+            result.put("in_flight", inFlight);
+            result.put("waiting", waiters.size());
+            result.put("granted", granted);
+            result.put("avg_wait_ms", granted == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(waitNanos / granted));
+            result.put("throttled", throttled);
+            result.put("retries", retries);
+            result.put("timeouts", timeouts);
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,138 @@
+package com.laioffer.jupiter.recommendation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Item-to-item co-occurrence counts built from favorite records: for every pair of items, the number of users who
+// favorited both. Item and user ids are mapped to dense ints once, after that everything is stored in int arrays and
+// primitive hash maps, one sparse row of neighbor counts per item. Records are added one at a time in favorite time
+// order, so the model can be kept up to date with the records added since the last update. A new favorite is only
+// paired with the last maxBasket favorites of the same user, which bounds the cost of users with huge histories.
+// Records cannot be removed, unfavorites are picked up by building a new model. Not thread-safe.
+class CoOccurrenceModel {
+    private final int maxBasket;
+    private final Map<String, Integer> itemIndex = new HashMap<>();
+    private final List<String> itemIds = new ArrayList<>();
+    private final Map<String, Integer> userIndex = new HashMap<>();
+    // (user << 32 | item) of every record added so far, so records read twice are ignored.
+    private final LongHashSet records = new LongHashSet(1024);
+
+    private IntIntHashMap[] neighbors = new IntIntHashMap[1024];
+    private int[] itemFavorites = new int[1024];
+    private int[][] baskets = new int[1024][];
+    private int[] basketSizes = new int[1024];
+    private long pairs;
+
+    CoOccurrenceModel(int maxBasket) {
+        this.maxBasket = maxBasket;
+    }
+
+    // Add one favorite record. Returns false if the record was added before.
+    boolean add(String userId, String itemId) {
+        int user = userIndex.computeIfAbsent(userId, key -> userIndex.size());
+        int item = itemIndex.computeIfAbsent(itemId, key -> {
+            itemIds.add(key);
+            return itemIds.size() - 1;
+        });
+        if (!records.add(((long) user << 32) | item)) {
+            return false;
+        }
+        ensureCapacity(Math.max(user, item) + 1);
+
+        int[] basket = baskets[user];
+        int size = basketSizes[user];
+        for (int k = Math.max(0, size - maxBasket); k < size; k++) {
+            int other = basket[k];
+            neighborsOf(item).addTo(other, 1);
+            neighborsOf(other).addTo(item, 1);
+            pairs++;
+        }
+        if (basket == null) {
+            basket = baskets[user] = new int[4];
+        } else if (size == basket.length) {
+            basket = baskets[user] = Arrays.copyOf(basket, size * 2);
+        }
+        basket[size] = item;
+        basketSizes[user] = size + 1;
+        itemFavorites[item]++;
+        return true;
+    }
+
+    private IntIntHashMap neighborsOf(int item) {
+        IntIntHashMap map = neighbors[item];
+        if (map == null) {
+            map = neighbors[item] = new IntIntHashMap(8);
+        }
+        return map;
+    }
+
+    private void ensureCapacity(int size) {
+        if (size <= neighbors.length) {
+            return;
+        }
+        int capacity = Math.max(size, neighbors.length * 2);
+        neighbors = Arrays.copyOf(neighbors, capacity);
+        itemFavorites = Arrays.copyOf(itemFavorites, capacity);
+        baskets = Arrays.copyOf(baskets, capacity);
+        basketSizes = Arrays.copyOf(basketSizes, capacity);
+    }
+
+    // Returns up to limit ids of the items most often favorited together with the given item, best first. The score
+    // is the cosine similarity count(a, b) / sqrt(favorites(a) * favorites(b)), so items that are popular with
+    // everyone do not show up for every item.
+    List<String> similarItems(String itemId, int limit) {
+        Integer index = itemIndex.get(itemId);
+        if (index == null || neighbors[index] == null || limit <= 0) {
+            return new ArrayList<>();
+        }
+        IntIntHashMap row = neighbors[index];
+        // Insertion into small sorted arrays, the limit is tiny compared to the number of neighbors.
+        int[] topItems = new int[limit];
+        double[] topScores = new double[limit];
+        int count = 0;
+        double favorites = itemFavorites[index];
+        for (int slot = 0; slot < row.capacity(); slot++) {
+            int other = row.keyAt(slot);
+            if (other == IntIntHashMap.EMPTY) {
+                continue;
+            }
+            double score = row.valueAt(slot) / Math.sqrt(favorites * itemFavorites[other]);
+            if (count == limit && score <= topScores[count - 1]) {
+                continue;
+            }
+            int i = count == limit ? count - 1 : count++;
+            while (i > 0 && topScores[i - 1] < score) {
+                topScores[i] = topScores[i - 1];
+                topItems[i] = topItems[i - 1];
+                i--;
+            }
+            topScores[i] = score;
+            topItems[i] = other;
+        }
+        List<String> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(itemIds.get(topItems[i]));
+        }
+        return result;
+    }
+
+    int getItemCount() {
+        return itemIds.size();
+    }
+
+    int getUserCount() {
+        return userIndex.size();
+    }
+
+    int getRecordCount() {
+        return records.size();
+    }
+
+    // Number of (item, item) increments, each counted once.
+    long getPairCount() {
+        return pairs;
+    }
+}
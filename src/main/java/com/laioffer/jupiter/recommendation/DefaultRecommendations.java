@@ -0,0 +1,128 @@
+package com.laioffer.jupiter.recommendation;
+
+import com.laioffer.jupiter.entities.Item;
+import com.laioffer.jupiter.external.TwitchClient;
+import com.laioffer.jupiter.util.AppConfig;
+import com.laioffer.jupiter.util.AppExecutors;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// The default recommendation is the same for every logged-out user and for every item type a user has no favorites
+// of, so it is built by a background job every default_recommendation_refresh_ms instead of on every request. Requests
+// are served from the last published snapshot. If a rebuild fails, the previous snapshot stays in place until the next
+// run succeeds. Only the very first request waits for a build.
+public class DefaultRecommendations {
+    private static final DefaultRecommendations instance = new DefaultRecommendations();
+
+    private volatile Snapshot current;
+    private volatile boolean refreshScheduled;
+
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile long lastFailureAt;
+
+    // Immutable result of one ItemRecommender.recommendItemsByDefault() run.
+    public static class Snapshot {
+        private final Map<String, List<Item>> itemMap;
+        private final long builtAt;
+        private final boolean stale;
+
+        private Snapshot(Map<String, List<Item>> itemMap, long builtAt, boolean stale) {
+            Map<String, List<Item>> copy = new HashMap<>();
+            for (Map.Entry<String, List<Item>> entry: itemMap.entrySet()) {
+                copy.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<>(entry.getValue())));
+            }
+            this.itemMap = Collections.unmodifiableMap(copy);
+            this.builtAt = builtAt;
+            this.stale = stale;
+        }
+
+        public Map<String, List<Item>> getItemMap() {
+            return itemMap;
+        }
+
+        // Items of the given type, e.g. "STREAM", or an empty list.
+        public List<Item> getItems(String type) {
+            return itemMap.getOrDefault(type, Collections.emptyList());
+        }
+
+        public long getAgeSeconds() {
+            return TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - builtAt);
+        }
+
+        // Returns whether the snapshot was built from stale Twitch data, see ItemRecommender.isStale().
+        public boolean isStale() {
+            return stale;
+        }
+    }
+
+    private DefaultRecommendations() {
+    }
+
+    public static DefaultRecommendations getInstance() {
+        return instance;
+    }
+
+    // Returns the current snapshot. Builds the first one if there is none yet.
+    public Snapshot get() throws RecommendationException {
+        Snapshot snapshot = current;
+        if (snapshot != null) {
+            return snapshot;
+        }
+        synchronized (this) {
+            scheduleRefresh();
+            if (current == null) {
+                current = build(TwitchClient.Priority.INTERACTIVE);
+            }
+            return current;
+        }
+    }
+
+    // The first build answers a waiting request, the scheduled rebuilds run as background Twitch traffic.
+    private static Snapshot build(TwitchClient.Priority priority) throws RecommendationException {
+        long start = System.currentTimeMillis();
+        ItemRecommender recommender = new ItemRecommender(priority);
+        Map<String, List<Item>> itemMap = recommender.recommendItemsByDefault();
+        return new Snapshot(itemMap, start, recommender.isStale());
+    }
+
+    private void scheduleRefresh() {
+        if (refreshScheduled) {
+            return;
+        }
+        long intervalMs = AppConfig.get().getLong("default_recommendation_refresh_ms", 60000);
+        AppExecutors.scheduleInBackground(this::refresh, intervalMs, intervalMs);
+        refreshScheduled = true;
+    }
+
+    private void refresh() {
+        try {
+            current = build(TwitchClient.Priority.BACKGROUND);
+            refreshes.incrementAndGet();
+        } catch (RuntimeException e) {
+            // Keep serving the last good snapshot.
+            failures.incrementAndGet();
+            lastFailureAt = System.currentTimeMillis();
+            e.printStackTrace();
+        }
+    }
+
+    // Returns the state of the snapshot, e.g. {"age_seconds": 12, "stale": false, "refreshes": 40, "failures": 1, ...}
+    public static Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        Snapshot snapshot = instance.current;
+        result.put("age_seconds", snapshot == null ? null : snapshot.getAgeSeconds());
+        result.put("stale", snapshot != null && snapshot.isStale());
+        result.put("refreshes", instance.refreshes.get());
+        result.put("failures", instance.failures.get());
+        result.put("last_failure_at", instance.lastFailureAt);
+        return result;
+    }
+}
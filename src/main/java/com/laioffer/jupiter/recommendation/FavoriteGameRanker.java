@@ -0,0 +1,74 @@
+package com.laioffer.jupiter.recommendation;
+
+import com.laioffer.jupiter.entities.FavoriteHistory;
+import com.laioffer.jupiter.entities.ItemType;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+// Picks the games to search for a personalized recommendation. One pass over the favorite records of a user scores
+// every (type, game): each record adds 2^(-age / half life), so a game favorited last week counts more than one
+// favorited a year ago. The best games of every type are then taken from a heap that never holds more than the limit,
+// so heavy users with many favorite games do not pay for sorting all of them.
+class FavoriteGameRanker {
+    // Lowest score first, so the heap can drop its worst game. On equal scores the larger game id goes first.
+    private static final Comparator<Score> WORST_FIRST = Comparator.<Score>comparingDouble(score -> score.value)
+            .thenComparing(score -> score.gameId, Comparator.reverseOrder());
+
+    // Mutable score, updated in place instead of boxing a new number for every record.
+    private static final class Score {
+        private final String gameId;
+        private double value;
+
+        private Score(String gameId) {
+            this.gameId = gameId;
+        }
+    }
+
+    private FavoriteGameRanker() {
+    }
+
+    // Returns up to gameLimit game ids per item type, best first. With halfLifeMs <= 0 every record counts 1, which
+    // ranks the games by the number of favorites.
+    static Map<ItemType, List<String>> rank(FavoriteHistory history, int gameLimit, long halfLifeMs, long now) {
+        Map<ItemType, Map<String, Score>> scores = new EnumMap<>(ItemType.class);
+        for (ItemType type: ItemType.values()) {
+            scores.put(type, new HashMap<>());
+        }
+        double decayPerMs = halfLifeMs > 0 ? Math.log(2) / halfLifeMs : 0;
+        for (FavoriteHistory.Favorite favorite: history.getFavorites()) {
+            if (favorite.getGameId() == null) {
+                continue;
+            }
+            Score score = scores.get(favorite.getType()).computeIfAbsent(favorite.getGameId(), Score::new);
+            score.value += Math.exp(-decayPerMs * Math.max(0, now - favorite.getFavoredAt()));
+        }
+
+        Map<ItemType, List<String>> result = new EnumMap<>(ItemType.class);
+        for (ItemType type: ItemType.values()) {
+            if (gameLimit <= 0) {
+                result.put(type, Collections.emptyList());
+                continue;
+            }
+            PriorityQueue<Score> heap = new PriorityQueue<>(gameLimit + 1, WORST_FIRST);
+            for (Score score: scores.get(type).values()) {
+                heap.offer(score);
+                if (heap.size() > gameLimit) {
+                    heap.poll();
+                }
+            }
+            String[] gameIds = new String[heap.size()];
+            for (int i = gameIds.length - 1; i >= 0; i--) {
+                gameIds[i] = heap.poll().gameId;
+            }
+            result.put(type, Arrays.asList(gameIds));
+        }
+        return result;
+    }
+}
@@ -1,146 +1,184 @@
 package com.laioffer.jupiter.recommendation;
 
-import com.laioffer.jupiter.db.MySQLConnection;
-import com.laioffer.jupiter.db.MySQLDBUtil;
+import com.laioffer.jupiter.db.FavoritesCache;
 import com.laioffer.jupiter.db.MySQLException;
+import com.laioffer.jupiter.entities.FavoriteHistory;
 import com.laioffer.jupiter.entities.Game;
 import com.laioffer.jupiter.entities.Item;
 import com.laioffer.jupiter.entities.ItemType;
 import com.laioffer.jupiter.external.TwitchClient;
 import com.laioffer.jupiter.external.TwitchException;
+import com.laioffer.jupiter.util.AppConfig;
+import com.laioffer.jupiter.util.AppExecutors;
 
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
 public class ItemRecommender {
-    private static int recommendation_game_limit;
-    private static int per_game_recommendation_limit;
-    private static int total_recommendation_limit;
+    private final int recommendation_game_limit;
+    private final int per_game_recommendation_limit;
+    private final int total_recommendation_limit;
+    private final long recommendation_timeout_ms;
+    private final long favorite_half_life_ms;
+    private final TwitchClient twitchClient;
+    // Set once a type was filled in from a DefaultRecommendations snapshot built from stale Twitch data.
+    private volatile boolean staleDefaults;
 
     public ItemRecommender() {
-        Properties prop = new Properties();
-        String propFileName = "config.properties";
-
-        InputStream inputStream = MySQLDBUtil.class.getClassLoader().getResourceAsStream(propFileName);
-        try {
-            prop.load(inputStream);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        recommendation_game_limit = Integer.valueOf(prop.getProperty("recommendation_game_limit"));
-        per_game_recommendation_limit = Integer.valueOf(prop.getProperty("per_game_recommendation_limit"));
-        total_recommendation_limit = Integer.valueOf(prop.getProperty("total_recommendation_limit"));
+        this(TwitchClient.Priority.INTERACTIVE);
     }
 
-    // Return a list of Item objects for the given type. Types are one of [Stream, Video, Clip]. Add items are related
-    // to the top games provided in the argument
-    private List<Item> recommendByTopGames (ItemType type, List<Game> topGames) throws RecommendationException {
-        List<Item> recommendItems = new ArrayList<>();
-        TwitchClient twitchClient = new TwitchClient();
-
-        outerloop:
-        for(Game game: topGames) {
-            List<Item> items;
-            try {
-                items = twitchClient.searchByType(game.getId(), type, per_game_recommendation_limit);
-            } catch (TwitchException e) {
-                throw new RecommendationException("Failed to get recommendation result.");
-            }
-            for (Item item: items) {
-                if (recommendItems.size() == total_recommendation_limit) break outerloop;
-                recommendItems.add(item);
-            }
-        }
-        return recommendItems;
+    // Jobs that do not answer a waiting user pass BACKGROUND, so their Twitch requests queue behind interactive ones.
+    public ItemRecommender(TwitchClient.Priority priority) {
+        twitchClient = new TwitchClient(priority);
+        AppConfig config = AppConfig.get();
+        recommendation_game_limit = config.getInt("recommendation_game_limit", 3);
+        per_game_recommendation_limit = config.getInt("per_game_recommendation_limit", 10);
+        total_recommendation_limit = config.getInt("total_recommendation_limit", 20);
+        recommendation_timeout_ms = config.getLong("recommendation_timeout_ms", 5000);
+        favorite_half_life_ms = config.getLong("recommendation_favorite_half_life_ms", 2592000000L);
     }
 
-    // Return a list of Item objects for the given type. Types are one of [Stream, Video, Clip]. All items are related
-    // to the items previously favorited by the user. E.g., if a user favorited some videos about game "Just Chatting",
-    // then it will return some other videos about the same game.
-    private List<Item> recommendByFavoriteHistory (ItemType type, Set<String> favoriteItemIds, List<String> favoriteGameIds)
-            throws RecommendationException {
-        List<Item> recommendItems = new ArrayList<>();
-
-        // Count the favorite game IDs from the database for the given user. E.g. if the favorited game ID list is
-        // ["1234", "2345", "2345", "3456"], the returned Map is {"1234": 1, "2345": 2, "3456": 1}
-        Map<String, Integer> countGameIds = new HashMap<>();
-        for (String gameId: favoriteGameIds) {
-            countGameIds.put(gameId, countGameIds.getOrDefault(gameId, 0) + 1);
+    // Start fetching a list of Item objects for the given type. Types are one of [Stream, Video, Clip]. All items are
+    // related to the top games provided in the argument
+    private RecommendationPipeline recommendByTopGames (ItemType type, List<Game> topGames) {
+        List<String> gameIds = new ArrayList<>();
+        for (Game game: topGames) {
+            gameIds.add(game.getId());
         }
+        return new RecommendationPipeline(type, Collections.emptySet())
+                .start(twitchClient, AppExecutors.fetchPool(), gameIds, per_game_recommendation_limit);
+    }
 
-        // Sort the game Id by count. E.g. if the input is {"1234": 1, "2345": 2, "3456": 1}, the returned Map is
-        // {"2345": 2, "1234": 1, "3456": 1}
-        List<Map.Entry<String, Integer>> sortedFavoriteGameIds = new ArrayList<>(countGameIds.entrySet());
-        sortedFavoriteGameIds.sort((Map.Entry<String, Integer> e1, Map.Entry<String, Integer> e2)
-                -> Integer.compare(e2.getValue(), e1.getValue()));
-
-        if (sortedFavoriteGameIds.size() > recommendation_game_limit) sortedFavoriteGameIds.subList(0, recommendation_game_limit);
+    // Start fetching a list of Item objects for the given type. Types are one of [Stream, Video, Clip]. All items are
+    // related to the items previously favorited by the user. E.g., if a user favorited some videos about game "Just
+    // Chatting", then it will return some other videos about the same game. The game ids come from FavoriteGameRanker,
+    // best first.
+    private RecommendationPipeline recommendByFavoriteHistory (ItemType type, Set<String> favoriteItemIds,
+                                                               List<String> rankedGameIds) {
+        return new RecommendationPipeline(type, favoriteItemIds)
+                .start(twitchClient, AppExecutors.fetchPool(), rankedGameIds, per_game_recommendation_limit);
+    }
 
-        TwitchClient twitchClient = new TwitchClient();
-        // Search Twitch based on the favorite game IDs returned in the last step.
-        outerloop:
-        for(Map.Entry<String, Integer> eachGame: sortedFavoriteGameIds) {
-            List<Item> items;
-            try {
-                items = twitchClient.searchByType(eachGame.getKey(), type, per_game_recommendation_limit);
-            } catch (TwitchException e) {
-                throw new RecommendationException("Failed to get recommendation result.");
-            }
-            for (Item item: items) {
-                if (recommendItems.size() == total_recommendation_limit) {
-                    break outerloop;
-                }
-                if (!favoriteItemIds.contains(item.getId())) {
-                    recommendItems.add(item);
-                }
+    // Wait for all started pipelines and put their results into the map. Every pipeline stops early once it has
+    // total_recommendation_limit items.
+    private Map<String, List<Item>> collect (List<RecommendationPipeline> pipelines) throws RecommendationException {
+        Map<String, List<Item>> recommendItemMap = new HashMap<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(recommendation_timeout_ms);
+        try {
+            for (RecommendationPipeline pipeline: pipelines) {
+                recommendItemMap.put(pipeline.getType().toString(),
+                        pipeline.collect(total_recommendation_limit, deadline));
             }
+        } finally {
+            cancel(pipelines);
         }
+        return recommendItemMap;
+    }
 
-        return recommendItems;
+    // Returns the game ids to search for every item type, at most recommendation_game_limit of them, recently and
+    // often favorited games first. Also used by RecommendationBatchJob.
+    Map<ItemType, List<String>> rankFavoriteGames (FavoriteHistory history) {
+        return FavoriteGameRanker.rank(history, recommendation_game_limit, favorite_half_life_ms,
+                System.currentTimeMillis());
     }
 
     // Return a map of Item objects as the recommendation result. Keys of the may are [Stream, Video, Clip]. Each key
     // is corresponding to a list of Items objects, each item object is a recommended item based on the previous
     // favorite records by the user.
     public Map<String, List<Item>> recommendItemsByUser (String userId) throws RecommendationException {
-        Map<String, List<Item>> recommendItemMap = new HashMap<>();
-        Set<String> favoriteItemIds;
-        Map<String, List<String>> favoriteGameIdMap;
-        try (MySQLConnection conn = new MySQLConnection()) {
-            favoriteItemIds = conn.getFavoriteItemIds(userId);
-            favoriteGameIdMap = conn.getFavoriteGameIds(favoriteItemIds);
+        FavoriteHistory history;
+        try {
+            history = FavoritesCache.getInstance().getFavoriteHistory(userId);
         } catch (MySQLException e) {
             throw new RecommendationException("Failed to get user favorite history for recommendation.");
         }
+        Map<ItemType, List<String>> rankedGameIds = rankFavoriteGames(history);
+
+        // Start the Twitch requests of all types first, so they run at the same time. Types without favorites get the
+        // default recommendation, which is already built in the background.
+        List<RecommendationPipeline> pipelines = new ArrayList<>();
+        List<String> defaultTypes = new ArrayList<>();
+        for (Map.Entry<ItemType, List<String>> each: rankedGameIds.entrySet()) {
+            if (each.getValue().isEmpty()) {
+                defaultTypes.add(each.getKey().toString());
+            } else {
+                pipelines.add(recommendByFavoriteHistory(each.getKey(), history.getFavoriteItemIds(), each.getValue()));
+            }
+        }
+        Map<String, List<Item>> defaultItemMap = new HashMap<>();
+        if (!defaultTypes.isEmpty()) {
+            try {
+                DefaultRecommendations.Snapshot snapshot = DefaultRecommendations.getInstance().get();
+                staleDefaults |= snapshot.isStale();
+                for (String type: defaultTypes) {
+                    defaultItemMap.put(type, snapshot.getItems(type));
+                }
+            } catch (RecommendationException e) {
+                cancel(pipelines);
+                throw e;
+            }
+        }
+        Map<String, List<Item>> recommendItemMap = collect(pipelines);
+        recommendItemMap.putAll(defaultItemMap);
+        return recommendItemMap;
+    }
 
-        for (Map.Entry<String, List<String>> each: favoriteGameIdMap.entrySet()) {
-            ItemType type = ItemType.valueOf(each.getKey());
-            List<String> gameIds = each.getValue();
-            if (gameIds.size() == 0) {
-                List<Game> topGames;
-                try {
-                    topGames = new TwitchClient().topGames(recommendation_game_limit);
-                } catch (TwitchException e) {
-                    throw new RecommendationException("Failed to get game data for recommendation.");
+    // Same as recommendItemsByUser(), but the Twitch requests do not hold a thread. The favorite history is still read
+    // on the calling thread, it is almost always cached. The future fails with a RecommendationException if the
+    // result is not ready within recommendation_timeout_ms.
+    public CompletableFuture<Map<String, List<Item>>> recommendItemsByUserAsync (String userId)
+            throws RecommendationException {
+        FavoriteHistory history;
+        try {
+            history = FavoritesCache.getInstance().getFavoriteHistory(userId);
+        } catch (MySQLException e) {
+            throw new RecommendationException("Failed to get user favorite history for recommendation.");
+        }
+        Map<String, List<Item>> defaultItemMap = new HashMap<>();
+        Map<String, CompletableFuture<List<Item>>> futures = new HashMap<>();
+        DefaultRecommendations.Snapshot snapshot = null;
+        for (Map.Entry<ItemType, List<String>> each: rankFavoriteGames(history).entrySet()) {
+            if (each.getValue().isEmpty()) {
+                if (snapshot == null) {
+                    snapshot = DefaultRecommendations.getInstance().get();
+                    staleDefaults |= snapshot.isStale();
                 }
-                recommendItemMap.put(type.toString(),
-                        recommendByTopGames(type, topGames));
+                defaultItemMap.put(each.getKey().toString(), snapshot.getItems(each.getKey().toString()));
             } else {
-                recommendItemMap.put(type.toString(),
-                        recommendByFavoriteHistory(type, favoriteItemIds, gameIds));
+                futures.put(each.getKey().toString(), new RecommendationPipeline(each.getKey(),
+                        history.getFavoriteItemIds()).collectAsync(twitchClient, each.getValue(),
+                        per_game_recommendation_limit, total_recommendation_limit));
             }
         }
-        return recommendItemMap;
+
+        CompletableFuture<Map<String, List<Item>>> result = CompletableFuture
+                .allOf(futures.values().toArray(new CompletableFuture<?>[0]))
+                .handle((ignored, error) -> {
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                        if (!(cause instanceof TwitchException)) {
+                            cause.printStackTrace();
+                        }
+                        throw new RecommendationException("Failed to get recommendation result.");
+                    }
+                    Map<String, List<Item>> recommendItemMap = new HashMap<>(defaultItemMap);
+                    for (Map.Entry<String, CompletableFuture<List<Item>>> each: futures.entrySet()) {
+                        recommendItemMap.put(each.getKey(), each.getValue().join());
+                    }
+                    return recommendItemMap;
+                });
+        return AppExecutors.withTimeout(result, recommendation_timeout_ms,
+                () -> new RecommendationException("Failed to get recommendation result."));
     }
 
     // Return a map of Item objects as the recommendation result. Keys of the may are [Stream, Video, Clip]. Each key
     // is corresponding to a list of Items objects, each item object is a recommended item based on the top games
-    // currently on Twitch.
+    // currently on Twitch. Requests should use the snapshot of DefaultRecommendations, which calls this in the
+    // background.
     public Map<String, List<Item>> recommendItemsByDefault () throws RecommendationException {
-        Map<String, List<Item>> recommendItemMap = new HashMap<>();
-        TwitchClient twitchClient = new TwitchClient();
         List<Game> topGames;
         try {
             topGames = twitchClient.topGames(recommendation_game_limit);
@@ -148,9 +186,22 @@ public class ItemRecommender {
             throw new RecommendationException("Failed to get game data for recommendation.");
         }
 
+        List<RecommendationPipeline> pipelines = new ArrayList<>();
         for(ItemType type: ItemType.values()) {
-            recommendItemMap.put(type.toString(), recommendByTopGames(type, topGames));
+            pipelines.add(recommendByTopGames(type, topGames));
+        }
+        return collect(pipelines);
+    }
+
+    // Returns whether any of the Twitch data used so far was a stale fallback, see TwitchClient.isStale(). This
+    // includes the Twitch data the default recommendations used for types without favorites were built from.
+    public boolean isStale() {
+        return twitchClient.isStale() || staleDefaults;
+    }
+
+    private static void cancel(List<RecommendationPipeline> pipelines) {
+        for (RecommendationPipeline pipeline: pipelines) {
+            pipeline.cancel();
         }
-        return recommendItemMap;
     }
 }
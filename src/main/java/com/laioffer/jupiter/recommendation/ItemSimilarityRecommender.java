@@ -0,0 +1,143 @@
+package com.laioffer.jupiter.recommendation;
+
+import com.laioffer.jupiter.db.MySQLConnection;
+import com.laioffer.jupiter.entities.FavoriteRecord;
+import com.laioffer.jupiter.util.AppConfig;
+import com.laioffer.jupiter.util.AppExecutors;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// "Users who favorited this also favorited" recommendations from an in-memory CoOccurrenceModel of favorite_records.
+// Unlike ItemRecommender it never calls Twitch, a query only reads the model. A background job adds the records
+// favorited since the last update every item_similarity_refresh_ms, and builds a new model from scratch every
+// item_similarity_rebuild_ms so that unfavorites are dropped. Until the first build has finished, queries return an
+// empty list.
+public class ItemSimilarityRecommender {
+    private static final ItemSimilarityRecommender instance = new ItemSimilarityRecommender();
+
+    // Queries take the read lock, the background job takes the write lock while it adds records.
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private CoOccurrenceModel model;
+    // last_favor_time of the newest record in the model. Records at exactly this time are read again and ignored.
+    private long watermark;
+    private long builtAt;
+    private volatile boolean started;
+
+    private volatile long lastUpdateMs;
+    private volatile long lastRebuildMs;
+
+    private ItemSimilarityRecommender() {
+    }
+
+    public static ItemSimilarityRecommender getInstance() {
+        return instance;
+    }
+
+    // Returns up to limit ids of the items that were favorited most often together with the given item, best first.
+    public List<String> similarItemIds(String itemId, int limit) {
+        start();
+        lock.readLock().lock();
+        try {
+            return model == null ? new ArrayList<>() : model.similarItems(itemId, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void start() {
+        if (started) {
+            return;
+        }
+        synchronized (this) {
+            if (!started) {
+                long intervalMs = AppConfig.get().getLong("item_similarity_refresh_ms", 60000);
+                AppExecutors.scheduleInBackground(this::update, 0, intervalMs);
+                started = true;
+            }
+        }
+    }
+
+    // Runs on the background pool, never twice at the same time.
+    private void update() {
+        try {
+            AppConfig config = AppConfig.get();
+            long rebuildMs = config.getLong("item_similarity_rebuild_ms", 86400000);
+            if (model == null || System.currentTimeMillis() - builtAt > rebuildMs) {
+                rebuild(config.getInt("item_similarity_max_basket", 200));
+            } else {
+                addNewRecords();
+            }
+        } catch (RuntimeException e) {
+            // Keep the current model and try again with the next run.
+            e.printStackTrace();
+        }
+    }
+
+    // Build a new model next to the current one, queries keep using the old model until it is done.
+    private void rebuild(int maxBasket) {
+        long start = System.currentTimeMillis();
+        List<FavoriteRecord> records;
+        try (MySQLConnection conn = new MySQLConnection()) {
+            records = conn.getFavoriteRecordsSince(0);
+        }
+        CoOccurrenceModel newModel = new CoOccurrenceModel(maxBasket);
+        long newWatermark = 0;
+        for (FavoriteRecord record: records) {
+            newModel.add(record.getUserId(), record.getItemId());
+            newWatermark = Math.max(newWatermark, record.getFavoredAt());
+        }
+        lock.writeLock().lock();
+        try {
+            model = newModel;
+            watermark = newWatermark;
+            builtAt = start;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        lastRebuildMs = System.currentTimeMillis() - start;
+    }
+
+    private void addNewRecords() {
+        long start = System.currentTimeMillis();
+        List<FavoriteRecord> records;
+        try (MySQLConnection conn = new MySQLConnection()) {
+            records = conn.getFavoriteRecordsSince(watermark);
+        }
+        lock.writeLock().lock();
+        try {
+            for (FavoriteRecord record: records) {
+                model.add(record.getUserId(), record.getItemId());
+                watermark = Math.max(watermark, record.getFavoredAt());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        lastUpdateMs = System.currentTimeMillis() - start;
+    }
+
+    // Returns the size of the model, e.g. {"items": 5000, "users": 800, "records": 20000, "pairs": 90000, ...}
+    public static Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        instance.lock.readLock().lock();
+        try {
+            CoOccurrenceModel model = instance.model;
+            if (model != null) {
+                result.put("items", model.getItemCount());
+                result.put("users", model.getUserCount());
+                result.put("records", model.getRecordCount());
+                result.put("pairs", model.getPairCount());
+                result.put("watermark", instance.watermark);
+            }
+        } finally {
+            instance.lock.readLock().unlock();
+        }
+        result.put("last_rebuild_ms", instance.lastRebuildMs);
+        result.put("last_update_ms", instance.lastUpdateMs);
+        return result;
+    }
+}
@@ -0,0 +1,66 @@
+package com.laioffer.jupiter.recommendation;
+
+import java.util.Arrays;
+
+// Set of long values with open addressing and linear probing, stored in one plain array. Values must not be negative.
+// Values can only be added, never removed. Not thread-safe.
+class LongHashSet {
+    private static final long EMPTY = -1;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private long[] values;
+    private int size;
+    private int resizeAt;
+
+    LongHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR) + 1) - 1) << 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        values = new long[capacity];
+        Arrays.fill(values, EMPTY);
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int slot(long value, int mask) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    // Returns false if the value was already in the set.
+    boolean add(long value) {
+        int mask = values.length - 1;
+        int i = slot(value, mask);
+        while (values[i] != EMPTY) {
+            if (values[i] == value) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        values[i] = value;
+        if (++size > resizeAt) {
+            rehash(values.length << 1);
+        }
+        return true;
+    }
+
+    private void rehash(int capacity) {
+        long[] old = values;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (long value: old) {
+            if (value != EMPTY) {
+                int i = slot(value, mask);
+                while (values[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                values[i] = value;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+}
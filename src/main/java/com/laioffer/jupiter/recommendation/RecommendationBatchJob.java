@@ -0,0 +1,173 @@
+package com.laioffer.jupiter.recommendation;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.laioffer.jupiter.db.MySQLConnection;
+import com.laioffer.jupiter.db.MySQLConnectionPool;
+import com.laioffer.jupiter.entities.FavoriteHistory;
+import com.laioffer.jupiter.entities.Item;
+import com.laioffer.jupiter.entities.ItemType;
+import com.laioffer.jupiter.external.TwitchClient;
+import com.laioffer.jupiter.external.TwitchHttpTransport;
+import com.laioffer.jupiter.util.AppConfig;
+import com.laioffer.jupiter.util.AppExecutors;
+import com.laioffer.jupiter.util.JsonRegistry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Offline job that precomputes the recommendations of every user with favorite records and writes them to the
+// recommendations table, where RecommendServlet reads them with one indexed query. Users are split into chunks that
+// run on a ForkJoinPool of recommendation_batch_parallelism threads. Many users favorite the same games, so the Twitch
+// results of every (game, type) are fetched once per run and shared by all users. The results are the same as
+// ItemRecommender.recommendItemsByUser() returns at the time the job runs.
+public class RecommendationBatchJob {
+    // Users per leaf task, also the number of rows written per batch.
+    private static final int CHUNK_SIZE = 50;
+    private static final ObjectWriter MAP_WRITER = JsonRegistry.writerFor(HashMap.class);
+
+    private final int per_game_recommendation_limit;
+    private final int total_recommendation_limit;
+    private final TwitchClient twitchClient = new TwitchClient(TwitchClient.Priority.BACKGROUND);
+    private final ItemRecommender itemRecommender = new ItemRecommender(TwitchClient.Priority.BACKGROUND);
+    private final Map<String, CompletableFuture<List<Item>>> gameItems = new ConcurrentHashMap<>();
+    private Map<String, List<Item>> defaultItemMap;
+    private Map<String, Long> favoriteVersions;
+
+    private final AtomicLong users = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong twitchRequests = new AtomicLong();
+
+    public RecommendationBatchJob() {
+        AppConfig config = AppConfig.get();
+        per_game_recommendation_limit = config.getInt("per_game_recommendation_limit", 10);
+        total_recommendation_limit = config.getInt("total_recommendation_limit", 20);
+    }
+
+    // Run this as a Java application to precompute the recommendations of all users.
+    public static void main(String[] args) {
+        try {
+            new RecommendationBatchJob().run();
+        } finally {
+            MySQLConnectionPool.shutdown();
+            AppExecutors.shutdown();
+            TwitchHttpTransport.shutdown();
+        }
+    }
+
+    public void run() throws RecommendationException {
+        long start = System.currentTimeMillis();
+        Map<String, FavoriteHistory> histories;
+        try (MySQLConnection conn = new MySQLConnection()) {
+            // Versions first, a favorite changed while the histories are read then marks the result as stale.
+            favoriteVersions = conn.getFavoriteVersions();
+            histories = conn.getAllFavoriteHistories();
+        }
+        // Types without favorites get the default recommendation, which is the same for every user.
+        defaultItemMap = itemRecommender.recommendItemsByDefault();
+
+        int parallelism = AppConfig.get().getInt("recommendation_batch_parallelism", 8);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new ChunkTask(new ArrayList<>(histories.entrySet()), 0, histories.size()));
+        } finally {
+            pool.shutdown();
+        }
+        // On stderr like the stack traces of failed users, so the output of a run can be captured in one place.
+        System.err.println("Computed recommendations of " + users.get() + " users in " +
+                (System.currentTimeMillis() - start) + " ms with " + twitchRequests.get() + " Twitch requests, " +
+                failures.get() + " failed.");
+    }
+
+    private class ChunkTask extends RecursiveAction {
+        private final List<Map.Entry<String, FavoriteHistory>> histories;
+        private final int from;
+        private final int to;
+
+        private ChunkTask(List<Map.Entry<String, FavoriteHistory>> histories, int from, int to) {
+            this.histories = histories;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CHUNK_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ChunkTask(histories, from, middle), new ChunkTask(histories, middle, to));
+                return;
+            }
+            Map<String, String> payloads = new HashMap<>();
+            for (Map.Entry<String, FavoriteHistory> each: histories.subList(from, to)) {
+                try {
+                    payloads.put(each.getKey(), MAP_WRITER.writeValueAsString(recommend(each.getValue())));
+                } catch (RuntimeException | JsonProcessingException e) {
+                    // Keep the old row of this user, the servlet computes it live once that is stale.
+                    failures.incrementAndGet();
+                    e.printStackTrace();
+                }
+            }
+            if (payloads.isEmpty()) {
+                return;
+            }
+            try (MySQLConnection conn = new MySQLConnection()) {
+                conn.saveRecommendations(payloads, favoriteVersions);
+                users.addAndGet(payloads.size());
+            } catch (RuntimeException e) {
+                failures.addAndGet(payloads.size());
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Same as ItemRecommender.recommendItemsByUser(), but with the Twitch results shared between users.
+    private Map<String, List<Item>> recommend(FavoriteHistory history) {
+        Map<String, List<Item>> recommendItemMap = new HashMap<>();
+        Map<ItemType, List<String>> rankedGameIds = itemRecommender.rankFavoriteGames(history);
+        for (ItemType type: ItemType.values()) {
+            if (rankedGameIds.get(type).isEmpty()) {
+                recommendItemMap.put(type.toString(), defaultItemMap.get(type.toString()));
+                continue;
+            }
+            List<Item> recommendItems = new ArrayList<>();
+            outerloop:
+            for (String gameId: rankedGameIds.get(type)) {
+                for (Item item: searchShared(gameId, type)) {
+                    if (recommendItems.size() == total_recommendation_limit) {
+                        break outerloop;
+                    }
+                    if (!history.getFavoriteItemIds().contains(item.getId())) {
+                        recommendItems.add(item);
+                    }
+                }
+            }
+            recommendItemMap.put(type.toString(), recommendItems);
+        }
+        return recommendItemMap;
+    }
+
+    // The first task that needs a (game, type) fetches it, all others wait for that result. Waiting in join() lets the
+    // ForkJoinPool start another worker in the meantime.
+    private List<Item> searchShared(String gameId, ItemType type) {
+        String key = gameId + '/' + type;
+        CompletableFuture<List<Item>> future = new CompletableFuture<>();
+        CompletableFuture<List<Item>> existing = gameItems.putIfAbsent(key, future);
+        if (existing != null) {
+            return existing.join();
+        }
+        twitchRequests.incrementAndGet();
+        try {
+            future.complete(twitchClient.searchByType(gameId, type, per_game_recommendation_limit));
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future.join();
+    }
+}
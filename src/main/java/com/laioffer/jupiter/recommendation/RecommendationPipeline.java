@@ -0,0 +1,112 @@
+package com.laioffer.jupiter.recommendation;
+
+import com.laioffer.jupiter.entities.Item;
+import com.laioffer.jupiter.entities.ItemType;
+import com.laioffer.jupiter.external.TwitchClient;
+import com.laioffer.jupiter.external.TwitchException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Fetches the items of one type for a list of candidate games. All Twitch requests are sent at once on the given
+// executor, the results are then consumed in the priority order of the games, so the output is the same as searching
+// the games one by one. Once the limit is reached, the requests of the remaining games are cancelled.
+//
+// collectAsync() does the same on the non-blocking Twitch client, without holding a thread per game.
+class RecommendationPipeline {
+    private final ItemType type;
+    private final Set<String> excludedItemIds;
+    private final List<Future<List<Item>>> fetches = new ArrayList<>();
+
+    RecommendationPipeline(ItemType type, Set<String> excludedItemIds) {
+        this.type = type;
+        this.excludedItemIds = excludedItemIds == null ? Collections.emptySet() : excludedItemIds;
+    }
+
+    // Send one request per game, in the given priority order.
+    RecommendationPipeline start(TwitchClient twitchClient, ExecutorService executor, List<String> gameIds,
+                                 int perGameLimit) {
+        for (String gameId: gameIds) {
+            fetches.add(executor.submit(() -> twitchClient.searchByType(gameId, type, perGameLimit)));
+        }
+        return this;
+    }
+
+    // Wait for the results game by game and fill the recommendation list up to totalLimit items. Results of games
+    // that are not needed any more are never waited for.
+    List<Item> collect(int totalLimit, long deadlineNanos) throws RecommendationException {
+        List<Item> recommendItems = new ArrayList<>();
+        try {
+            for (Future<List<Item>> fetch: fetches) {
+                if (recommendItems.size() == totalLimit) {
+                    break;
+                }
+                addItems(recommendItems, fetch.get(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS),
+                        totalLimit);
+            }
+        } catch (TimeoutException e) {
+            // Twitch being slow is expected, the caller falls back or reports the error.
+            throw new RecommendationException("Failed to get recommendation result.");
+        } catch (ExecutionException e) {
+            if (!(e.getCause() instanceof TwitchException)) {
+                e.printStackTrace();
+            }
+            throw new RecommendationException("Failed to get recommendation result.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RecommendationException("Failed to get recommendation result.");
+        } finally {
+            cancel();
+        }
+        return recommendItems;
+    }
+
+    // Same as start() followed by collect(), without blocking. All requests are sent at once, each result is only
+    // consumed after the results of the games before it, so the output is the same. Once the limit is reached, the
+    // remaining results are not waited for. The requests cannot be cancelled, their pages still end up in the search
+    // cache. The caller is responsible for a timeout.
+    CompletableFuture<List<Item>> collectAsync(TwitchClient twitchClient, List<String> gameIds, int perGameLimit,
+                                               int totalLimit) {
+        CompletableFuture<List<Item>> result = CompletableFuture.completedFuture(new ArrayList<>());
+        for (String gameId: gameIds) {
+            CompletableFuture<List<Item>> fetch = twitchClient.searchByTypeAsync(gameId, type, perGameLimit);
+            result = result.thenCompose(recommendItems -> recommendItems.size() == totalLimit
+                    ? CompletableFuture.completedFuture(recommendItems)
+                    : fetch.thenApply(items -> addItems(recommendItems, items, totalLimit)));
+        }
+        return result;
+    }
+
+    // Add the items that are not excluded until the list holds totalLimit items.
+    private List<Item> addItems(List<Item> recommendItems, List<Item> items, int totalLimit) {
+        for (Item item: items) {
+            if (recommendItems.size() == totalLimit) {
+                break;
+            }
+            if (!excludedItemIds.contains(item.getId())) {
+                recommendItems.add(item);
+            }
+        }
+        return recommendItems;
+    }
+
+    ItemType getType() {
+        return type;
+    }
+
+    // Drops the fetches that have not started yet. Running ones are not interrupted: a fetch may be the single-flight
+    // leader other requests wait on, and an interrupt would fail them all.
+    void cancel() {
+        for (Future<List<Item>> fetch: fetches) {
+            fetch.cancel(false);
+        }
+    }
+}
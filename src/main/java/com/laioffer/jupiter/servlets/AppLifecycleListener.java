@@ -0,0 +1,30 @@
+package com.laioffer.jupiter.servlets;
+
+import com.laioffer.jupiter.db.FavoriteWriteBehind;
+import com.laioffer.jupiter.db.MySQLConnectionPool;
+import com.laioffer.jupiter.external.TwitchHttpTransport;
+import com.laioffer.jupiter.util.AppConfig;
+import com.laioffer.jupiter.util.AppExecutors;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+@WebListener
+public class AppLifecycleListener implements ServletContextListener {
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        AppConfig.startWatching();
+    }
+
+    // Release the shared resources when the webapp is stopped or redeployed.
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        AppConfig.stopWatching();
+        // Write the queued favorite records while the connection pool is still open.
+        FavoriteWriteBehind.shutdown();
+        MySQLConnectionPool.shutdown();
+        AppExecutors.shutdown();
+        TwitchHttpTransport.shutdown();
+    }
+}
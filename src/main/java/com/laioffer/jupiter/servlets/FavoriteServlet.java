@@ -1,5 +1,7 @@
 package com.laioffer.jupiter.servlets;
 
+import com.laioffer.jupiter.db.FavoriteWriteBehind;
+import com.laioffer.jupiter.db.FavoritesCache;
 import com.laioffer.jupiter.db.MySQLConnection;
 import com.laioffer.jupiter.entities.FavoriteRequestBody;
 import com.laioffer.jupiter.entities.Item;
@@ -22,11 +24,17 @@ public class FavoriteServlet extends HttpServlet {
 
         // Get favorite item information from request body
         FavoriteRequestBody body = ServletUtil.readRequestBody(request, FavoriteRequestBody.class);
-        if (body == null) {
+        if (body == null || !FavoriteWriteBehind.isValid(userId, body.getFavoriteItem(), true)) {
             response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
             return;
         }
 
+        if (FavoriteWriteBehind.isEnabled()) {
+            // Return as soon as the record is queued, it is written to the database in the background.
+            FavoriteWriteBehind.getInstance().setFavoriteItem(body.getFavoriteItem(), userId);
+            response.setStatus(HttpServletResponse.SC_OK);
+            return;
+        }
         try(MySQLConnection conn = new MySQLConnection()) {
             // Save the favorite item to the database
             conn.setFavoriteItem(body.getFavoriteItem(), userId);
@@ -41,14 +49,10 @@ public class FavoriteServlet extends HttpServlet {
         String userId = ServletUtil.validateSession(request, response);
         if (userId == null) return;
 
-        try(MySQLConnection conn = new MySQLConnection()) {
-            // Read the favorite items from the database
-            Map<String, List<Item>> itemMap = conn.getFavoriteItems(userId);
-            response.setStatus(HttpServletResponse.SC_OK);
-            ServletUtil.writeItemMap(response, itemMap);
-        } catch (TwitchException e) {
-            throw new ServletException(e);
-        }
+        // Read the favorite items from the cache, the database is only read for users that are not cached yet.
+        Map<String, List<Item>> itemMap = FavoritesCache.getInstance().getFavoriteItems(userId);
+        response.setStatus(HttpServletResponse.SC_OK);
+        ServletUtil.writeItemMap(request, response, itemMap);
     }
 
     @Override
@@ -57,10 +61,15 @@ public class FavoriteServlet extends HttpServlet {
         if (userId == null) return;
 
         FavoriteRequestBody body = ServletUtil.readRequestBody(request, FavoriteRequestBody.class);
-        if (body == null) {
+        if (body == null || !FavoriteWriteBehind.isValid(userId, body.getFavoriteItem(), false)) {
             response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
             return;
         }
+        if (FavoriteWriteBehind.isEnabled()) {
+            FavoriteWriteBehind.getInstance().unsetFavoriteItem(body.getFavoriteItem(), userId);
+            response.setStatus(HttpServletResponse.SC_OK);
+            return;
+        }
         try(MySQLConnection conn = new MySQLConnection()) {
             // Remove the favorite item to the database
             conn.unsetFavoriteItem(body.getFavoriteItem(), userId);
@@ -1,17 +1,14 @@
 package com.laioffer.jupiter.servlets;
 
 import com.laioffer.jupiter.external.TwitchClient;
-import com.laioffer.jupiter.entities.Game;
-import com.laioffer.jupiter.external.TwitchException;
 import com.laioffer.jupiter.util.ServletUtil;
 
 import javax.servlet.*;
 import javax.servlet.http.*;
 import javax.servlet.annotation.*;
 import java.io.IOException;
-import java.util.List;
 
-@WebServlet(name = "GameServlet", value = "/game")
+@WebServlet(name = "GameServlet", value = "/game", asyncSupported = true)
 public class GameServlet extends HttpServlet {
 
     @Override
@@ -21,20 +18,15 @@ public class GameServlet extends HttpServlet {
         String limit = request.getParameter("limit");
         TwitchClient twitchClient = new TwitchClient();
 
-        // Let the client know the returned data is in JSON format.
-        response.setContentType("application/json;charset=UTF-8");
-        try {
-            // Return the dedicated game information if gameName is provided in the request URL, otherwise return the
-            // top x games.
-            if (gameName != null) {
-                Game game = twitchClient.searchGame(gameName);
-                ServletUtil.writeItemMap(response, game);
-            } else {
-                List<Game> gameList = twitchClient.topGames(limit == null ? 0 : Integer.parseInt(limit));
-                ServletUtil.writeItemMap(response, gameList);
-            }
-        } catch (TwitchException e){
-            throw new ServletException(e);
+        // Return the dedicated game information if gameName is provided in the request URL, otherwise return the top x
+        // games. Both are answered without holding the container thread while Twitch is called.
+        if (gameName != null) {
+            ServletUtil.completeAsync(request.startAsync(), twitchClient.searchGameAsync(gameName),
+                    twitchClient::isStale);
+        } else {
+            int gameLimit = limit == null ? 0 : Integer.parseInt(limit);
+            ServletUtil.completeAsync(request.startAsync(), twitchClient.topGamesAsync(gameLimit),
+                    twitchClient::isStale);
         }
     }
 
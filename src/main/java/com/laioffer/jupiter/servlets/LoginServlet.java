@@ -24,7 +24,7 @@ public class LoginServlet extends HttpServlet {
             return;
         }
 
-        String name = "";
+        String name;
         try (MySQLConnection conn = new MySQLConnection()) {
             String userId = loginRequestBody.getUserId();
             String password = ServletUtil.encrytPassword(userId, loginRequestBody.getPassword());
@@ -34,20 +34,16 @@ public class LoginServlet extends HttpServlet {
             if (name == "") {
                 response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
             } else {
+                // Create a new session, put user ID as an attribute into the session object, and set the expiration
+                // time to 600 seconds. This has to happen before the body is written, the session cookie is a header.
+                HttpSession httpSession = request.getSession();
+                httpSession.setAttribute("user_id", userId);
+                httpSession.setMaxInactiveInterval(MAX_INACTIVE_INTERVAL);
                 response.setStatus(HttpServletResponse.SC_OK);
-                ServletUtil.writeItemMap(response, new LoginResponseBody(userId, name));
+                ServletUtil.writeItemMap(request, response, new LoginResponseBody(userId, name));
             }
         } catch (MySQLException e) {
             throw new ServletException(e);
         }
-
-        // Create a new session for the user if user ID and password are correct, otherwise return Unauthorized error.
-        if (!name.isEmpty()) {
-            // Create a new session, put user ID as an attribute into the session object, and set the expiration time to
-            // 600 seconds.
-            HttpSession httpSession = request.getSession();
-            httpSession.setAttribute("user_id", loginRequestBody.getUserId());
-            httpSession.setMaxInactiveInterval(MAX_INACTIVE_INTERVAL);
-        }
     }
 }
@@ -0,0 +1,37 @@
+package com.laioffer.jupiter.servlets;
+
+import com.laioffer.jupiter.db.FavoriteWriteBehind;
+import com.laioffer.jupiter.db.FavoritesCache;
+import com.laioffer.jupiter.db.MySQLConnectionPool;
+import com.laioffer.jupiter.external.TwitchClient;
+import com.laioffer.jupiter.external.TwitchHttpTransport;
+import com.laioffer.jupiter.recommendation.DefaultRecommendations;
+import com.laioffer.jupiter.recommendation.ItemSimilarityRecommender;
+import com.laioffer.jupiter.util.AppExecutors;
+import com.laioffer.jupiter.util.ServletUtil;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+import javax.servlet.annotation.*;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@WebServlet(name = "MetricsServlet", value = "/metrics")
+public class MetricsServlet extends HttpServlet {
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        // Collect runtime statistics of the shared components, e.g. {"twitch_http_pool": {"leased": 3, ...}}
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("twitch_http_pool", TwitchHttpTransport.getInstance().getStats());
+        metrics.put("fetch_pool", AppExecutors.getStats());
+        metrics.put("db_pool", MySQLConnectionPool.getStats());
+        metrics.put("favorite_writes", FavoriteWriteBehind.getStats());
+        metrics.put("favorites_cache", FavoritesCache.getStats());
+        metrics.put("twitch_client", TwitchClient.getStats());
+        metrics.put("default_recommendations", DefaultRecommendations.getStats());
+        metrics.put("item_similarity", ItemSimilarityRecommender.getStats());
+        metrics.put("responses", ServletUtil.getResponseStats());
+        ServletUtil.writeItemMap(request, response, metrics);
+    }
+}
@@ -1,8 +1,13 @@
 package com.laioffer.jupiter.servlets;
 
+import com.fasterxml.jackson.databind.util.RawValue;
+import com.laioffer.jupiter.db.MySQLConnection;
+import com.laioffer.jupiter.db.MySQLException;
+import com.laioffer.jupiter.recommendation.DefaultRecommendations;
 import com.laioffer.jupiter.recommendation.ItemRecommender;
 import com.laioffer.jupiter.entities.Item;
 import com.laioffer.jupiter.recommendation.RecommendationException;
+import com.laioffer.jupiter.util.AppConfig;
 import com.laioffer.jupiter.util.ServletUtil;
 
 import javax.servlet.*;
@@ -11,8 +16,9 @@ import javax.servlet.annotation.*;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
-@WebServlet(name = "RecommendServlet", value = "/recommendation")
+@WebServlet(name = "RecommendServlet", value = "/recommendation", asyncSupported = true)
 public class RecommendServlet extends HttpServlet {
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
@@ -20,15 +26,46 @@ public class RecommendServlet extends HttpServlet {
         String userId = ServletUtil.validateSession(request);
         ItemRecommender itemRecommender = new ItemRecommender();
         Map<String, List<Item>> itemMap;
+        boolean stale;
         try {
             if (userId == null) {
-                itemMap = itemRecommender.recommendItemsByDefault();
+                // Same result for every logged-out user, served from the snapshot built in the background.
+                DefaultRecommendations.Snapshot snapshot = DefaultRecommendations.getInstance().get();
+                response.setHeader("Age", String.valueOf(snapshot.getAgeSeconds()));
+                itemMap = snapshot.getItemMap();
+                stale = snapshot.isStale();
             } else {
-                itemMap = itemRecommender.recommendItemsByUser(userId);
+                // Serve the recommendations precomputed by RecommendationBatchJob if they are still fresh.
+                String payload = readPrecomputed(userId);
+                if (payload != null) {
+                    ServletUtil.writeItemMap(request, response, new RawValue(payload));
+                    return;
+                }
+                // Computed live without holding the container thread while Twitch is called.
+                CompletableFuture<Map<String, List<Item>>> future = itemRecommender.recommendItemsByUserAsync(userId);
+                ServletUtil.completeAsync(request.startAsync(), future, itemRecommender::isStale);
+                return;
             }
         } catch (RecommendationException e) {
             throw new ServletException(e);
         }
-        ServletUtil.writeItemMap(response,itemMap);
+        if (stale) {
+            ServletUtil.setStaleWarning(response);
+        }
+        ServletUtil.writeItemMap(request, response, itemMap);
+    }
+
+    // Returns the precomputed recommendations of the user as JSON, or null if they are missing or stale.
+    private static String readPrecomputed(String userId) {
+        AppConfig config = AppConfig.get();
+        if (!config.getBoolean("recommendation_use_precomputed", false)) {
+            return null;
+        }
+        try (MySQLConnection conn = new MySQLConnection()) {
+            return conn.getRecommendations(userId, config.getLong("recommendation_max_age_ms", 86400000));
+        } catch (MySQLException e) {
+            // Compute the recommendations live instead.
+            return null;
+        }
     }
 }
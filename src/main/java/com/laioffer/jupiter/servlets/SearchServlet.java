@@ -1,18 +1,14 @@
 package com.laioffer.jupiter.servlets;
 
 import com.laioffer.jupiter.external.TwitchClient;
-import com.laioffer.jupiter.entities.Item;
-import com.laioffer.jupiter.external.TwitchException;
 import com.laioffer.jupiter.util.ServletUtil;
 
 import javax.servlet.*;
 import javax.servlet.http.*;
 import javax.servlet.annotation.*;
 import java.io.IOException;
-import java.util.List;
-import java.util.Map;
 
-@WebServlet(name = "SearchServlet", value = "/search")
+@WebServlet(name = "SearchServlet", value = "/search", asyncSupported = true)
 public class SearchServlet extends HttpServlet {
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
@@ -21,12 +17,10 @@ public class SearchServlet extends HttpServlet {
             response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
             return;
         }
+        // The items are fetched on the non-blocking Twitch client, the container thread is released right away and the
+        // response is written once they have arrived.
         TwitchClient twitchClient = new TwitchClient();
-        try {
-            Map<String, List<Item>> itemMap = twitchClient.searchItems(gameId, 0);
-            ServletUtil.writeItemMap(response, itemMap);
-        } catch (TwitchException e) {
-            throw new ServletException(e);
-        }
+        ServletUtil.completeAsync(request.startAsync(), twitchClient.searchItemsAsync(gameId, 0),
+                twitchClient::isStale);
     }
 }
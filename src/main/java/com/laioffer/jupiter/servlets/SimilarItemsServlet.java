@@ -0,0 +1,48 @@
+package com.laioffer.jupiter.servlets;
+
+import com.laioffer.jupiter.db.MySQLConnection;
+import com.laioffer.jupiter.db.MySQLException;
+import com.laioffer.jupiter.entities.Item;
+import com.laioffer.jupiter.entities.ItemType;
+import com.laioffer.jupiter.recommendation.ItemSimilarityRecommender;
+import com.laioffer.jupiter.util.AppConfig;
+import com.laioffer.jupiter.util.ServletUtil;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+import javax.servlet.annotation.*;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@WebServlet(name = "SimilarItemsServlet", value = "/similar")
+public class SimilarItemsServlet extends HttpServlet {
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        String itemId = request.getParameter("item_id");
+        if (itemId == null) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        // Items other users favorited together with this one, best first, from the in-memory co-occurrence model.
+        int limit = AppConfig.get().getInt("item_similarity_limit", 20);
+        List<String> itemIds = ItemSimilarityRecommender.getInstance().similarItemIds(itemId, limit);
+
+        Map<String, List<Item>> itemMap = new HashMap<>();
+        for (ItemType type: ItemType.values()) {
+            itemMap.put(type.toString(), new ArrayList<>());
+        }
+        if (!itemIds.isEmpty()) {
+            try (MySQLConnection conn = new MySQLConnection()) {
+                for (Item item: conn.getItems(itemIds)) {
+                    itemMap.get(item.getType().toString()).add(item);
+                }
+            } catch (MySQLException e) {
+                throw new ServletException(e);
+            }
+        }
+        ServletUtil.writeItemMap(request, response, itemMap);
+    }
+}
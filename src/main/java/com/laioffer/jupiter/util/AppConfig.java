@@ -0,0 +1,218 @@
+package com.laioffer.jupiter.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Immutable snapshot of config.properties. The file is read once when the class is loaded, after that every caller
+// shares the same snapshot through AppConfig.get(). When the webapp is started, a watcher thread reloads the file if it
+// is changed on disk and swaps in the new snapshot atomically. Callers that need several values which belong together
+// should call get() once and read all of them from the same snapshot. A changed file is only swapped in if every
+// key the code has read so far still parses as the type it was read as, otherwise the current snapshot is kept.
+public class AppConfig {
+    private static final String PROP_FILE_NAME = "config.properties";
+    // Type every key was read as, e.g. "http_read_timeout_ms" -> Integer, filled in by the getters.
+    private static final Map<String, Class<?>> readTypes = new ConcurrentHashMap<>();
+    private static final AtomicReference<AppConfig> current = new AtomicReference<>(loadFromClasspath());
+    private static volatile WatchService watchService;
+
+    private final Map<String, String> properties;
+    private final long loadedAt;
+
+    private AppConfig(Properties prop) {
+        Map<String, String> map = new HashMap<>();
+        for (String name: prop.stringPropertyNames()) {
+            map.put(name, prop.getProperty(name).trim());
+        }
+        properties = Collections.unmodifiableMap(map);
+        loadedAt = System.currentTimeMillis();
+    }
+
+    public static AppConfig get() {
+        return current.get();
+    }
+
+    public String getString(String key) {
+        return properties.get(key);
+    }
+
+    public String getString(String key, String defaultValue) {
+        return properties.getOrDefault(key, defaultValue);
+    }
+
+    public int getInt(String key, int defaultValue) {
+        recordType(key, Integer.class);
+        String value = properties.get(key);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    public long getLong(String key, long defaultValue) {
+        recordType(key, Long.class);
+        String value = properties.get(key);
+        return value == null ? defaultValue : Long.parseLong(value);
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        recordType(key, Double.class);
+        String value = properties.get(key);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        recordType(key, Boolean.class);
+        String value = properties.get(key);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    private static void recordType(String key, Class<?> type) {
+        // Checked first, the getters are called on every request and the key is almost always known already.
+        if (!readTypes.containsKey(key)) {
+            readTypes.putIfAbsent(key, type);
+        }
+    }
+
+    // Returns the first key whose value does not parse as the type the code reads it as, e.g.
+    // "http_read_timeout_ms=5s is not a valid integer", or null if all of them are fine. Missing keys fall back to the
+    // defaults of the callers and are fine too.
+    private String validate() {
+        for (Map.Entry<String, Class<?>> each: readTypes.entrySet()) {
+            String value = properties.get(each.getKey());
+            if (value == null) {
+                continue;
+            }
+            Class<?> type = each.getValue();
+            try {
+                if (type == Integer.class) {
+                    Integer.parseInt(value);
+                } else if (type == Long.class) {
+                    Long.parseLong(value);
+                } else if (type == Double.class) {
+                    Double.parseDouble(value);
+                } else if (type == Boolean.class && !value.equalsIgnoreCase("true")
+                        && !value.equalsIgnoreCase("false")) {
+                    throw new NumberFormatException();
+                }
+            } catch (NumberFormatException e) {
+                return each.getKey() + "=" + value + " is not a valid " + type.getSimpleName().toLowerCase();
+            }
+        }
+        return null;
+    }
+
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+
+    private static AppConfig loadFromClasspath() {
+        Properties prop = new Properties();
+        try (InputStream inputStream = AppConfig.class.getClassLoader().getResourceAsStream(PROP_FILE_NAME)) {
+            if (inputStream == null) {
+                System.err.println("Cannot find " + PROP_FILE_NAME + ", using default values.");
+            } else {
+                prop.load(inputStream);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return new AppConfig(prop);
+    }
+
+    // Returns whether the new snapshot was swapped in.
+    static boolean reload(Path file) {
+        Properties prop = new Properties();
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            prop.load(inputStream);
+        } catch (IOException | IllegalArgumentException e) {
+            // Keep the current snapshot, e.g. the file is being replaced right now.
+            e.printStackTrace();
+            return false;
+        }
+        AppConfig config = new AppConfig(prop);
+        String error = config.validate();
+        if (error != null) {
+            System.err.println("Not reloading " + file + ", keeping the current config: " + error);
+            return false;
+        }
+        current.set(config);
+        System.err.println("Reloaded " + file);
+        return true;
+    }
+
+    // Start watching config.properties for changes. Only works if the file is a plain file on disk, e.g. in an
+    // exploded webapp, otherwise the snapshot loaded at startup is used until the webapp is restarted.
+    public static synchronized void startWatching() {
+        if (watchService != null) {
+            return;
+        }
+        URL url = AppConfig.class.getClassLoader().getResource(PROP_FILE_NAME);
+        if (url == null || !"file".equals(url.getProtocol())) {
+            return;
+        }
+        Path file;
+        try {
+            file = Paths.get(url.toURI());
+            watchService = FileSystems.getDefault().newWatchService();
+            file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException | URISyntaxException e) {
+            e.printStackTrace();
+            return;
+        }
+        WatchService service = watchService;
+        Thread watcher = new Thread(() -> watch(service, file), "jupiter-config-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private static void watch(WatchService service, Path file) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                boolean changed = false;
+                for (WatchEvent<?> event: key.pollEvents()) {
+                    if (file.getFileName().equals(event.context())) {
+                        changed = true;
+                    }
+                }
+                if (changed) {
+                    // Editors often write a file in several steps, wait a moment for the last one.
+                    Thread.sleep(200);
+                    reload(file);
+                }
+                if (!key.reset()) {
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // The webapp is stopped.
+        }
+    }
+
+    public static synchronized void stopWatching() {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        watchService = null;
+    }
+}
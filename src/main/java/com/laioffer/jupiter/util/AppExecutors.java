@@ -0,0 +1,176 @@
+package com.laioffer.jupiter.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Shared thread pools of the webapp. The fetch pool runs blocking upstream calls (e.g. Twitch requests) in parallel.
+// Its queue is bounded, when it is full the submitting thread runs the task itself instead of queueing more work.
+// The scheduler only keeps timers, the jobs it triggers must not block it. Blocking background jobs such as cache
+// refreshes run on the background pool, see runInBackground() and scheduleInBackground().
+public class AppExecutors {
+    private static final int SCHEDULER_THREADS = 2;
+    private static volatile ThreadPoolExecutor fetchPool;
+    private static volatile ThreadPoolExecutor backgroundPool;
+    private static volatile ScheduledThreadPoolExecutor scheduler;
+
+    public static ExecutorService fetchPool() {
+        if (fetchPool == null) {
+            synchronized (AppExecutors.class) {
+                if (fetchPool == null) {
+                    fetchPool = createFetchPool();
+                }
+            }
+        }
+        return fetchPool;
+    }
+
+    public static ScheduledExecutorService scheduler() {
+        if (scheduler == null) {
+            synchronized (AppExecutors.class) {
+                if (scheduler == null) {
+                    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(SCHEDULER_THREADS,
+                            daemonThreadFactory("jupiter-scheduler-"));
+                    executor.setRemoveOnCancelPolicy(true);
+                    scheduler = executor;
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    // Runs blocking background jobs, e.g. the reload of a cache or the maintenance of the database pool. They are few,
+    // so the queue is not bounded and never falls back to running the job on the submitting (scheduler) thread.
+    public static ExecutorService background() {
+        if (backgroundPool == null) {
+            synchronized (AppExecutors.class) {
+                if (backgroundPool == null) {
+                    int threads = AppConfig.get().getInt("background_pool_threads", 4);
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<>(), daemonThreadFactory("jupiter-background-"));
+                    executor.allowCoreThreadTimeOut(true);
+                    backgroundPool = executor;
+                }
+            }
+        }
+        return backgroundPool;
+    }
+
+    // Run the task on the background pool after delayMs. Only the timer is on the scheduler.
+    public static ScheduledFuture<?> runInBackground(Runnable task, long delayMs) {
+        return scheduler().schedule(() -> submit(task, null), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Like scheduleWithFixedDelay() of the scheduler, but the task runs on the background pool. A run is skipped while
+    // the previous one is still going, so runs never overlap. Cancel the returned future to stop the job.
+    public static ScheduledFuture<?> scheduleInBackground(Runnable task, long initialDelayMs, long delayMs) {
+        AtomicBoolean running = new AtomicBoolean();
+        return scheduler().scheduleWithFixedDelay(() -> {
+            if (running.compareAndSet(false, true)) {
+                submit(task, running);
+            }
+        }, initialDelayMs, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private static void submit(Runnable task, AtomicBoolean running) {
+        try {
+            background().execute(() -> {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                } finally {
+                    if (running != null) {
+                        running.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The webapp is shutting down.
+            if (running != null) {
+                running.set(false);
+            }
+        }
+    }
+
+    private static ThreadPoolExecutor createFetchPool() {
+        AppConfig config = AppConfig.get();
+        int threads = config.getInt("fetch_pool_threads", 16);
+        int queueSize = config.getInt("fetch_pool_queue_size", 200);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), daemonThreadFactory("jupiter-fetch-"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    // Returns the current state of the fetch pool, e.g. {"active": 2, "pool_size": 16, "queued": 0, "completed": 120}
+    public static Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        ThreadPoolExecutor executor = fetchPool;
+        if (executor != null) {
+            result.put("active", executor.getActiveCount());
+            result.put("pool_size", executor.getPoolSize());
+            result.put("queued", executor.getQueue().size());
+            result.put("completed", executor.getCompletedTaskCount());
+        }
+        return result;
+    }
+
+    // Fail the future with the given exception unless it completes within timeoutMs. Java 8 has no orTimeout(), the
+    // timer runs on the shared scheduler.
+    public static <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future, long timeoutMs,
+                                                       Supplier<? extends RuntimeException> exception) {
+        if (future.isDone()) {
+            return future;
+        }
+        try {
+            ScheduledFuture<?> timer = scheduler().schedule(() -> future.completeExceptionally(exception.get()),
+                    timeoutMs, TimeUnit.MILLISECONDS);
+            future.whenComplete((result, error) -> timer.cancel(false));
+        } catch (RejectedExecutionException e) {
+            // The webapp is shutting down.
+        }
+        return future;
+    }
+
+    // Stop all shared pools. Called once when the webapp is stopped.
+    public static void shutdown() {
+        synchronized (AppExecutors.class) {
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+                scheduler = null;
+            }
+            if (fetchPool != null) {
+                fetchPool.shutdownNow();
+                fetchPool = null;
+            }
+            if (backgroundPool != null) {
+                backgroundPool.shutdownNow();
+                backgroundPool = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.laioffer.jupiter.util;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Output stream for a response body. The first bytes are kept in the given buffer. If the body fits into it, it is
+// sent uncompressed with a Content-Length header, since compressing small bodies is not worth it. As soon as the
+// body outgrows the buffer, the stream switches to the negotiated encoding (gzip or deflate) and everything is streamed
+// to the servlet output stream from then on. The body is only complete once finish() is called. close() does nothing,
+// since Jackson closes its target also when serialization fails halfway.
+class CompressingResponseStream extends OutputStream {
+    private static final int COMPRESSION_BUFFER_SIZE = 8192;
+
+    private final HttpServletResponse response;
+    private final String encoding;
+    private final byte[] buffer;
+    private int count;
+    private OutputStream out;
+    private Deflater deflater;
+    private CountingOutputStream wire;
+    private long bodyBytes;
+    private boolean closed;
+
+    // The encoding is "gzip", "deflate" or null if the client accepts neither.
+    CompressingResponseStream(HttpServletResponse response, String encoding, byte[] buffer) {
+        this.response = response;
+        this.encoding = encoding;
+        this.buffer = buffer;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        bodyBytes += len;
+        if (out == null) {
+            if (count + len <= buffer.length) {
+                System.arraycopy(b, off, buffer, count, len);
+                count += len;
+                return;
+            }
+            startStreaming();
+        }
+        out.write(b, off, len);
+    }
+
+    private void startStreaming() throws IOException {
+        wire = new CountingOutputStream(response.getOutputStream());
+        if ("gzip".equals(encoding)) {
+            response.setHeader("Content-Encoding", "gzip");
+            out = new GZIPOutputStream(wire, COMPRESSION_BUFFER_SIZE);
+        } else if ("deflate".equals(encoding)) {
+            response.setHeader("Content-Encoding", "deflate");
+            deflater = new Deflater();
+            out = new DeflaterOutputStream(wire, deflater, COMPRESSION_BUFFER_SIZE);
+        } else {
+            out = wire;
+        }
+        out.write(buffer, 0, count);
+        count = 0;
+    }
+
+    @Override
+    public void flush() {
+        // Flushing is deferred to close(), flushing a compressed stream early only makes it larger.
+    }
+
+    @Override
+    public void close() {
+    }
+
+    // Writes what is left of the body, but neither flushes nor closes the servlet output stream. Flushing would commit
+    // the response, so the servlet could no longer set headers or cookies, e.g. the session cookie. Committing is
+    // left to the container.
+    void finish() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (out == null) {
+            response.setContentLength(count);
+            wire = new CountingOutputStream(response.getOutputStream());
+            wire.write(buffer, 0, count);
+        } else {
+            // Finishes the compressed stream. Closing the counting stream does not close the servlet output stream.
+            out.close();
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+    }
+
+    // Gives up on a body that failed to be written, so the container can send an error instead. Nothing of a body that
+    // still fits into the buffer has been sent. A streamed body is discarded as long as the response is not committed,
+    // together with its Content-Encoding header.
+    void abort() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (deflater != null) {
+            deflater.end();
+        }
+        if (out != null && !response.isCommitted()) {
+            if (encoding != null) {
+                response.reset();
+            } else {
+                response.resetBuffer();
+            }
+        }
+    }
+
+    // Number of bytes of the body before compression.
+    long getBodyBytes() {
+        return bodyBytes;
+    }
+
+    // Number of bytes actually sent to the client.
+    long getWireBytes() {
+        return wire == null ? 0 : wire.count;
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private final OutputStream target;
+        private long count;
+
+        private CountingOutputStream(OutputStream target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            target.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            target.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            target.flush();
+        }
+    }
+}
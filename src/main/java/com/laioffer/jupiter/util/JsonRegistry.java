@@ -0,0 +1,47 @@
+package com.laioffer.jupiter.util;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.laioffer.jupiter.entities.FavoriteRequestBody;
+import com.laioffer.jupiter.entities.Game;
+import com.laioffer.jupiter.entities.Item;
+import com.laioffer.jupiter.entities.LoginRequestBody;
+import com.laioffer.jupiter.entities.LoginResponseBody;
+import com.laioffer.jupiter.entities.User;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Central place for all JSON readers and writers of the webapp. Building a mapper is expensive because it introspects
+// every class it sees, so there is only one mapper, and the readers and writers of the entity classes are created and
+// warmed up once when the class is loaded. ObjectReader and ObjectWriter are immutable and safe to share between
+// threads.
+public class JsonRegistry {
+    private static final JsonMapper MAPPER = new JsonMapper();
+    private static final Map<Class<?>, ObjectReader> READERS = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, ObjectWriter> WRITERS = new ConcurrentHashMap<>();
+
+    static {
+        Class<?>[] entityTypes = { Item.class, Game.class, User.class, FavoriteRequestBody.class,
+                LoginRequestBody.class, LoginResponseBody.class };
+        for (Class<?> type: entityTypes) {
+            // Resolve the (de)serializers now, so the first request does not pay for the introspection.
+            MAPPER.canDeserialize(MAPPER.constructType(type));
+            MAPPER.canSerialize(type);
+            readerFor(type);
+            writerFor(type);
+        }
+    }
+
+    private JsonRegistry() {
+    }
+
+    public static ObjectReader readerFor(Class<?> type) {
+        return READERS.computeIfAbsent(type, MAPPER::readerFor);
+    }
+
+    public static ObjectWriter writerFor(Class<?> type) {
+        return WRITERS.computeIfAbsent(type, MAPPER::writerFor);
+    }
+}
@@ -2,19 +2,181 @@ package com.laioffer.jupiter.util;
 
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.json.JsonMapper;
 import org.apache.commons.codec.digest.DigestUtils;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
 
 public class ServletUtil {
-    public static <T> void writeItemMap(HttpServletResponse response, T contentObj) throws IOException {
+    private static final int compressionThreshold = AppConfig.get().getInt("response_compression_threshold_bytes", 2048);
+    // Reused by every response written on the same thread, responses smaller than this buffer are never compressed.
+    private static final ThreadLocal<byte[]> responseBuffer =
+            ThreadLocal.withInitial(() -> new byte[compressionThreshold]);
+    private static final Map<String, EndpointStats> endpointStats = new ConcurrentHashMap<>();
+
+    private static class EndpointStats {
+        private final LongAdder responses = new LongAdder();
+        private final LongAdder bodyBytes = new LongAdder();
+        private final LongAdder wireBytes = new LongAdder();
+    }
+
+    // Serialize the given object as JSON straight into the response stream. Bodies larger than the compression
+    // threshold are gzip or deflate compressed if the client accepts it. If serialization fails, nothing of the body
+    // is committed and the exception is thrown, so the client gets an error instead of a truncated 200.
+    public static <T> void writeItemMap(HttpServletRequest request, HttpServletResponse response, T contentObj)
+            throws IOException {
         response.setContentType("application/json;charset=UTF-8");
-        response.getWriter().println(new JsonMapper().writeValueAsString(contentObj));
+        response.setHeader("Vary", "Accept-Encoding");
+        Class<?> type = contentObj == null ? Object.class : contentObj.getClass();
+        CompressingResponseStream out = new CompressingResponseStream(response,
+                negotiateEncoding(request.getHeader("Accept-Encoding")), responseBuffer.get());
+        boolean finished = false;
+        try {
+            JsonRegistry.writerFor(type).writeValue(out, contentObj);
+            out.finish();
+            finished = true;
+        } finally {
+            if (!finished) {
+                out.abort();
+            }
+            EndpointStats stats = endpointStats.computeIfAbsent(request.getServletPath(), path -> new EndpointStats());
+            stats.responses.increment();
+            stats.bodyBytes.add(out.getBodyBytes());
+            stats.wireBytes.add(out.getWireBytes());
+        }
+    }
+
+    // Finish a request that was put into async mode once the future completes: write the content like writeItemMap(),
+    // with the stale warning if stale says so, or send a 500 if the future failed. The response is written on the
+    // shared fetch pool, so the I/O threads of the non-blocking Twitch client never write to a client socket.
+    // If the container times out the request or the connection fails first, the future is cancelled and a 503 is
+    // sent instead. Either way the context is completed exactly once.
+    public static <T> void completeAsync(AsyncContext asyncContext, CompletableFuture<T> future,
+                                         BooleanSupplier stale) {
+        AtomicBoolean done = new AtomicBoolean();
+        asyncContext.addListener(new AsyncListener() {
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                abort(asyncContext, future, done);
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                abort(asyncContext, future, done);
+            }
+
+            @Override
+            public void onComplete(AsyncEvent event) {
+                done.set(true);
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+        future.whenCompleteAsync((contentObj, error) -> {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            HttpServletRequest request = (HttpServletRequest) asyncContext.getRequest();
+            HttpServletResponse response = (HttpServletResponse) asyncContext.getResponse();
+            try {
+                if (error != null) {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause() : error;
+                    asyncContext.getRequest().getServletContext().log("Request failed: " + cause.getMessage());
+                    response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                } else {
+                    if (stale.getAsBoolean()) {
+                        setStaleWarning(response);
+                    }
+                    writeItemMap(request, response, contentObj);
+                }
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+                // writeItemMap() leaves a failed body uncommitted, so the client still gets an error.
+                if (!response.isCommitted()) {
+                    try {
+                        response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                    } catch (IOException | RuntimeException sendError) {
+                        // The client is gone.
+                    }
+                }
+            } finally {
+                asyncContext.complete();
+            }
+        }, AppExecutors.fetchPool());
+    }
+
+    private static void abort(AsyncContext asyncContext, CompletableFuture<?> future, AtomicBoolean done) {
+        if (!done.compareAndSet(false, true)) {
+            return;
+        }
+        future.cancel(false);
+        try {
+            ((HttpServletResponse) asyncContext.getResponse()).sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        } catch (IOException | RuntimeException e) {
+            // The client is gone or the response has already been committed.
+        } finally {
+            asyncContext.complete();
+        }
+    }
+
+    // Tell the client that the body was built from the last known good Twitch data because Twitch is failing, with
+    // warn-code 110 of RFC 7234.
+    public static void setStaleWarning(HttpServletResponse response) {
+        response.setHeader("Warning", "110 - \"Response is Stale\"");
+    }
+
+    // Pick the response encoding from the Accept-Encoding header, e.g. "gzip, deflate, br" -> "gzip". Returns null
+    // if the client accepts neither gzip nor deflate.
+    static String negotiateEncoding(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        boolean deflate = false;
+        for (String each: acceptEncoding.split(",")) {
+            String[] parts = each.trim().split(";");
+            String coding = parts[0].trim().toLowerCase();
+            if (parts.length > 1 && parts[1].trim().replace(" ", "").matches("q=0(\\.0*)?")) {
+                continue;
+            }
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                return "gzip";
+            }
+            if (coding.equals("deflate")) {
+                deflate = true;
+            }
+        }
+        return deflate ? "deflate" : null;
+    }
+
+    // Returns the number of responses and bytes written per endpoint, e.g.
+    // {"/search": {"responses": 10, "body_bytes": 52000, "wire_bytes": 9000}}
+    public static Map<String, Object> getResponseStats() {
+        Map<String, Object> result = new TreeMap<>();
+        for (Map.Entry<String, EndpointStats> each: endpointStats.entrySet()) {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("responses", each.getValue().responses.sum());
+            stats.put("body_bytes", each.getValue().bodyBytes.sum());
+            stats.put("wire_bytes", each.getValue().wireBytes.sum());
+            result.put(each.getKey(), stats);
+        }
+        return result;
     }
 
     // Help encrypt the user password before save to the database
@@ -43,7 +205,7 @@ public class ServletUtil {
     // Read user data from the request body
     public static <T> T readRequestBody(HttpServletRequest request, Class<T> valueType) throws IOException {
         try {
-            T res = new ObjectMapper().readValue(request.getReader(), valueType);
+            T res = JsonRegistry.readerFor(valueType).readValue(request.getReader());
             return res;
         } catch (JsonParseException | JsonMappingException e) {
             return null;
@@ -0,0 +1,189 @@
+package com.laioffer.jupiter.db;
+
+import com.laioffer.jupiter.entities.Item;
+import com.laioffer.jupiter.entities.ItemType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FavoriteWriteBehindTest {
+    private final FakeDatabase database = new FakeDatabase();
+    private FavoriteWriteBehind writeBehind;
+
+    // Keeps the favorite state of every (user, item) like favorite_records would, and records every batch.
+    private static class FakeDatabase implements FavoriteWriteBehind.Writer {
+        private final Map<String, Boolean> favorites = new HashMap<>();
+        private final List<List<FavoriteOp>> batches = new ArrayList<>();
+        private final AtomicBoolean down = new AtomicBoolean();
+        private volatile String badItemId;
+        private volatile boolean badIsBug;
+
+        @Override
+        public synchronized void write(Collection<FavoriteOp> ops) throws MySQLException {
+            if (down.get()) {
+                throw new MySQLException("Failed to connect to Database.");
+            }
+            for (FavoriteOp op: ops) {
+                if (op.getItem().getId().equals(badItemId)) {
+                    if (badIsBug) {
+                        throw new IllegalStateException("Unexpected record.");
+                    }
+                    throw new MySQLException("Failed to save favorite records to Database.");
+                }
+            }
+            for (FavoriteOp op: ops) {
+                favorites.put(op.getKey(), op.isFavorite());
+            }
+            batches.add(new ArrayList<>(ops));
+        }
+
+        synchronized Map<String, Boolean> favorites() {
+            return new HashMap<>(favorites);
+        }
+
+        synchronized List<List<FavoriteOp>> batches() {
+            return new ArrayList<>(batches);
+        }
+    }
+
+    private FavoriteWriteBehind start(int batchSize, long flushMs, int maxAttempts) {
+        writeBehind = new FavoriteWriteBehind(database, 1000, batchSize, flushMs, 100, 1000, maxAttempts);
+        return writeBehind;
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (writeBehind != null) {
+            writeBehind.stop();
+        }
+    }
+
+    private static Item item(String id) {
+        return new Item.Builder().id(id).type(ItemType.VIDEO).build();
+    }
+
+    private static FavoriteOp op(String userId, String itemId, boolean favorite) {
+        return new FavoriteOp(userId, item(itemId), favorite);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for the writer.");
+            Thread.sleep(5);
+        }
+    }
+
+    private static long stat(FavoriteWriteBehind writeBehind, String name) {
+        return ((Number) writeBehind.stats().get(name)).longValue();
+    }
+
+    // The flush interval is far longer than the test, so all records end up in the batch stop() writes.
+    @Test
+    void coalescesRecordsOfTheSameKey() throws MySQLException {
+        FavoriteWriteBehind writeBehind = start(100, 60000, 5);
+        writeBehind.enqueue(op("u1", "a", true));
+        writeBehind.enqueue(op("u1", "a", false));
+        writeBehind.enqueue(op("u1", "b", true));
+        FavoriteOp last = op("u1", "a", true);
+        writeBehind.enqueue(last);
+        assertEquals(2, writeBehind.unwrittenOps("u1").size());
+
+        writeBehind.stop();
+        List<List<FavoriteOp>> batches = database.batches();
+        assertEquals(1, batches.size());
+        assertEquals(2, batches.get(0).size());
+        assertTrue(batches.get(0).contains(last));
+        assertEquals(2, stat(writeBehind, "coalesced"));
+        assertEquals(2, stat(writeBehind, "written"));
+        assertTrue(writeBehind.unwrittenOps("u1").isEmpty());
+    }
+
+    // Small batches written while records keep coming in: the database must end up with the last record of every key.
+    @Test
+    void lastRecordOfEveryKeyWins() throws MySQLException {
+        FavoriteWriteBehind writeBehind = start(3, 1, 5);
+        Map<String, Boolean> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            FavoriteOp op = op("u" + random.nextInt(3), "item" + random.nextInt(5), random.nextBoolean());
+            expected.put(op.getKey(), op.isFavorite());
+            writeBehind.enqueue(op);
+        }
+        writeBehind.stop();
+        assertEquals(expected, database.favorites());
+        assertEquals(0, stat(writeBehind, "pending"));
+    }
+
+    @Test
+    void dropsARecordThatKeepsFailingWhileOthersAreWritten() throws Exception {
+        database.badItemId = "bad";
+        FavoriteWriteBehind writeBehind = start(100, 20, 2);
+        writeBehind.enqueue(op("u1", "good1", true));
+        writeBehind.enqueue(op("u1", "bad", true));
+        writeBehind.enqueue(op("u2", "good2", true));
+        waitFor(() -> database.favorites().size() == 2);
+        // A failure of the bad record alone looks like an outage, it only counts next to records that can be written.
+        writeBehind.enqueue(op("u3", "good3", true));
+        waitFor(() -> stat(writeBehind, "dropped") == 1);
+
+        assertEquals(3, database.favorites().size());
+        assertFalse(database.favorites().containsKey(op("u1", "bad", true).getKey()));
+        assertTrue(writeBehind.unwrittenOps("u1").isEmpty());
+        waitFor(() -> stat(writeBehind, "pending") == 0);
+    }
+
+    // Anything but a database error is a bad record right away, and must not stop the writer thread.
+    @Test
+    void unexpectedErrorsCountAgainstTheRecordAlone() throws Exception {
+        database.badItemId = "bad";
+        database.badIsBug = true;
+        FavoriteWriteBehind writeBehind = start(100, 20, 1);
+        writeBehind.enqueue(op("u1", "bad", true));
+        waitFor(() -> stat(writeBehind, "dropped") == 1);
+        writeBehind.enqueue(op("u1", "good", true));
+        waitFor(() -> database.favorites().size() == 1);
+    }
+
+    @Test
+    void keepsRecordsPendingWhileTheDatabaseIsDown() throws Exception {
+        database.down.set(true);
+        FavoriteWriteBehind writeBehind = start(100, 5, 1);
+        writeBehind.enqueue(op("u1", "a", true));
+        writeBehind.enqueue(op("u1", "b", true));
+        waitFor(() -> stat(writeBehind, "failures") >= 10);
+        assertEquals(0, stat(writeBehind, "dropped"));
+        assertEquals(2, writeBehind.unwrittenOps("u1").size());
+
+        database.down.set(false);
+        waitFor(() -> database.favorites().size() == 2);
+        assertEquals(0, stat(writeBehind, "dropped"));
+        waitFor(() -> writeBehind.unwrittenOps("u1").isEmpty());
+    }
+
+    @Test
+    void rejectsInvalidRecords() {
+        FavoriteWriteBehind writeBehind = start(100, 20, 5);
+        Item withoutType = new Item.Builder().id("a").build();
+        assertThrows(MySQLException.class, () -> writeBehind.enqueue(new FavoriteOp("u1", withoutType, true)));
+        assertThrows(MySQLException.class, () -> writeBehind.enqueue(new FavoriteOp(null, item("a"), true)));
+        assertEquals(0, stat(writeBehind, "enqueued"));
+
+        assertTrue(FavoriteWriteBehind.isValid("u1", withoutType, false));
+        assertFalse(FavoriteWriteBehind.isValid("u1", withoutType, true));
+        assertFalse(FavoriteWriteBehind.isValid("u1", new Item.Builder().build(), false));
+    }
+}
@@ -0,0 +1,135 @@
+package com.laioffer.jupiter.external;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class CircuitBreakerTest {
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.SECONDS.toNanos(5);
+
+    private static Object state(CircuitBreaker breaker) {
+        return breaker.getStats().get("state");
+    }
+
+    private static long permit(CircuitBreaker breaker) {
+        long permit = breaker.tryAcquire();
+        assertNotEquals(CircuitBreaker.REJECTED, permit);
+        return permit;
+    }
+
+    // A call made while the breaker is closed that failed.
+    private static void fail(CircuitBreaker breaker) {
+        breaker.onFailure(permit(breaker));
+    }
+
+    @Test
+    void opensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 2000, 60000);
+        fail(breaker);
+        fail(breaker);
+        assertEquals("CLOSED", state(breaker));
+        fail(breaker);
+        assertEquals("OPEN", state(breaker));
+        assertEquals(1L, breaker.getStats().get("opens"));
+    }
+
+    @Test
+    void successResetsTheFailureCount() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 2000, 60000);
+        fail(breaker);
+        fail(breaker);
+        breaker.onSuccess(permit(breaker), FAST);
+        fail(breaker);
+        fail(breaker);
+        assertEquals("CLOSED", state(breaker));
+    }
+
+    @Test
+    void slowCallsCountAsFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(2, 2000, 60000);
+        breaker.onSuccess(permit(breaker), SLOW);
+        breaker.onSuccess(permit(breaker), SLOW);
+        assertEquals("OPEN", state(breaker));
+        assertEquals(2L, breaker.getStats().get("slow_calls"));
+        assertEquals(0L, breaker.getStats().get("successes"));
+    }
+
+    @Test
+    void rejectsCallsWhileOpen() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 2000, 60000);
+        fail(breaker);
+        assertEquals(CircuitBreaker.REJECTED, breaker.tryAcquire());
+        assertEquals(CircuitBreaker.REJECTED, breaker.tryAcquire());
+        assertEquals(2L, breaker.getStats().get("rejections"));
+    }
+
+    // With an open period of 0 the next call after opening is the half-open probe.
+    @Test
+    void failedProbeOpensAgainAndSuccessfulProbeCloses() {
+        CircuitBreaker breaker = new CircuitBreaker(2, 2000, 0);
+        fail(breaker);
+        fail(breaker);
+        assertEquals("OPEN", state(breaker));
+
+        breaker.onFailure(permit(breaker));
+        assertEquals("OPEN", state(breaker));
+        assertEquals(2L, breaker.getStats().get("opens"));
+
+        long probe = permit(breaker);
+        assertEquals("HALF_OPEN", state(breaker));
+        breaker.onSuccess(probe, FAST);
+        assertEquals("CLOSED", state(breaker));
+        fail(breaker);
+        assertEquals("CLOSED", state(breaker));
+    }
+
+    // Calls that were let through before the breaker opened and complete late change nothing.
+    @Test
+    void lateResultsOfEarlierCallsAreIgnored() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 2000, 0);
+        long early = permit(breaker);
+        fail(breaker);
+        assertEquals("OPEN", state(breaker));
+        breaker.onSuccess(early, FAST);
+        assertEquals("OPEN", state(breaker));
+
+        long probe = permit(breaker);
+        assertEquals("HALF_OPEN", state(breaker));
+        breaker.onSuccess(early, FAST);
+        breaker.onFailure(early);
+        assertEquals("HALF_OPEN", state(breaker));
+        breaker.onFailure(probe);
+        assertEquals("OPEN", state(breaker));
+    }
+
+    // Once a probe that never reported back is replaced, only the new probe decides.
+    @Test
+    void onlyTheCurrentProbeClosesTheBreaker() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker(1, 2000, 50);
+        fail(breaker);
+        Thread.sleep(60);
+        long lost = permit(breaker);
+        Thread.sleep(60);
+        long probe = permit(breaker);
+        breaker.onSuccess(lost, FAST);
+        assertEquals("HALF_OPEN", state(breaker));
+        breaker.onSuccess(probe, FAST);
+        assertEquals("CLOSED", state(breaker));
+    }
+
+    // A second call while the probe has not reported back yet is rejected.
+    @Test
+    void halfOpenLetsOnlyOneProbeThrough() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker(1, 2000, 50);
+        fail(breaker);
+        assertEquals(CircuitBreaker.REJECTED, breaker.tryAcquire());
+        Thread.sleep(60);
+        permit(breaker);
+        assertEquals(CircuitBreaker.REJECTED, breaker.tryAcquire());
+        assertEquals("HALF_OPEN", state(breaker));
+    }
+}
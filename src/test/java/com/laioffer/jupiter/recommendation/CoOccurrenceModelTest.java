@@ -0,0 +1,87 @@
+package com.laioffer.jupiter.recommendation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CoOccurrenceModelTest {
+    // a: u1 u2 u3, b: u1 u2, c: u3 u4 u5. count(a, b) = 2 and count(a, c) = 1.
+    private static CoOccurrenceModel smallModel() {
+        CoOccurrenceModel model = new CoOccurrenceModel(200);
+        model.add("u1", "a");
+        model.add("u1", "b");
+        model.add("u2", "a");
+        model.add("u2", "b");
+        model.add("u3", "a");
+        model.add("u3", "c");
+        model.add("u4", "c");
+        model.add("u5", "c");
+        return model;
+    }
+
+    @Test
+    void similarItemsAreOrderedByScore() {
+        CoOccurrenceModel model = smallModel();
+        assertEquals(Arrays.asList("b", "c"), model.similarItems("a", 10));
+        assertEquals(Collections.singletonList("a"), model.similarItems("b", 10));
+        assertEquals(Collections.singletonList("a"), model.similarItems("c", 10));
+    }
+
+    @Test
+    void similarItemsStopsAtTheLimit() {
+        CoOccurrenceModel model = smallModel();
+        assertEquals(Collections.singletonList("b"), model.similarItems("a", 1));
+        assertTrue(model.similarItems("a", 0).isEmpty());
+    }
+
+    @Test
+    void unknownOrUnpairedItemHasNoSimilarItems() {
+        CoOccurrenceModel model = smallModel();
+        model.add("u6", "lonely");
+        assertTrue(model.similarItems("missing", 10).isEmpty());
+        assertTrue(model.similarItems("lonely", 10).isEmpty());
+    }
+
+    // popular and niche are both favorited together with x twice, but popular is favorited by everyone, so the cosine
+    // score puts niche first.
+    @Test
+    void popularItemsScoreLowerThanEqualCounts() {
+        CoOccurrenceModel model = new CoOccurrenceModel(200);
+        for (int user = 0; user < 10; user++) {
+            model.add("u" + user, "popular");
+        }
+        for (int user = 0; user < 2; user++) {
+            model.add("u" + user, "x");
+            model.add("u" + user, "niche");
+        }
+        assertEquals(Arrays.asList("niche", "popular"), model.similarItems("x", 10));
+    }
+
+    @Test
+    void recordsAddedTwiceAreIgnored() {
+        CoOccurrenceModel model = smallModel();
+        long pairs = model.getPairCount();
+        assertFalse(model.add("u1", "b"));
+        assertEquals(8, model.getRecordCount());
+        assertEquals(pairs, model.getPairCount());
+        assertEquals(3, model.getItemCount());
+        assertEquals(5, model.getUserCount());
+    }
+
+    // With a basket of 1 every favorite is only paired with the previous favorite of the same user.
+    @Test
+    void newFavoritesArePairedWithTheLastMaxBasketOnly() {
+        CoOccurrenceModel model = new CoOccurrenceModel(1);
+        model.add("u1", "a");
+        model.add("u1", "b");
+        model.add("u1", "c");
+        assertEquals(2, model.getPairCount());
+        assertEquals(Collections.singletonList("b"), model.similarItems("a", 10));
+        assertEquals(Collections.singletonList("b"), model.similarItems("c", 10));
+    }
+}
@@ -0,0 +1,79 @@
+package com.laioffer.jupiter.recommendation;
+
+import com.laioffer.jupiter.entities.FavoriteHistory;
+import com.laioffer.jupiter.entities.ItemType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FavoriteGameRankerTest {
+    private static final long NOW = 1600000000000L;
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private final List<FavoriteHistory.Favorite> favorites = new ArrayList<>();
+
+    private void favorite(String gameId, ItemType type, long ageMs, int times) {
+        for (int i = 0; i < times; i++) {
+            favorites.add(new FavoriteHistory.Favorite(gameId, type, NOW - ageMs));
+        }
+    }
+
+    private Map<ItemType, List<String>> rank(int gameLimit, long halfLifeMs) {
+        return FavoriteGameRanker.rank(new FavoriteHistory(new HashSet<>(), favorites), gameLimit, halfLifeMs, NOW);
+    }
+
+    @Test
+    void withoutHalfLifeGamesAreRankedByCount() {
+        favorite("1", ItemType.VIDEO, 300 * DAY, 3);
+        favorite("2", ItemType.VIDEO, 0, 1);
+        favorite("3", ItemType.VIDEO, 10 * DAY, 2);
+        assertEquals(Arrays.asList("1", "3", "2"), rank(5, 0).get(ItemType.VIDEO));
+    }
+
+    // Two favorites two half lives ago count 0.25 each, less than one favorite of today.
+    @Test
+    void recentFavoritesOutweighOldOnes() {
+        favorite("old", ItemType.CLIP, 60 * DAY, 2);
+        favorite("new", ItemType.CLIP, 0, 1);
+        assertEquals(Arrays.asList("new", "old"), rank(5, 30 * DAY).get(ItemType.CLIP));
+    }
+
+    @Test
+    void keepsOnlyTheBestGamesOfEveryType() {
+        for (int game = 0; game < 10; game++) {
+            favorite(String.valueOf(game), ItemType.STREAM, 0, game + 1);
+        }
+        favorite("clip", ItemType.CLIP, 0, 1);
+        Map<ItemType, List<String>> result = rank(3, 0);
+        assertEquals(Arrays.asList("9", "8", "7"), result.get(ItemType.STREAM));
+        assertEquals(Collections.singletonList("clip"), result.get(ItemType.CLIP));
+        assertTrue(result.get(ItemType.VIDEO).isEmpty());
+    }
+
+    @Test
+    void equalScoresPutTheSmallerGameIdFirst() {
+        favorite("b", ItemType.VIDEO, 0, 1);
+        favorite("c", ItemType.VIDEO, 0, 1);
+        favorite("a", ItemType.VIDEO, 0, 1);
+        assertEquals(Arrays.asList("a", "b"), rank(2, 0).get(ItemType.VIDEO));
+    }
+
+    @Test
+    void skipsRecordsWithoutGameAndHandlesZeroLimit() {
+        favorite(null, ItemType.VIDEO, 0, 5);
+        favorite("1", ItemType.VIDEO, 0, 1);
+        assertEquals(Collections.singletonList("1"), rank(3, 0).get(ItemType.VIDEO));
+        for (List<String> gameIds: rank(0, 0).values()) {
+            assertTrue(gameIds.isEmpty());
+        }
+    }
+}
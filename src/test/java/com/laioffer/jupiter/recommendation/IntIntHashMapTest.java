@@ -0,0 +1,64 @@
+package com.laioffer.jupiter.recommendation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class IntIntHashMapTest {
+    @Test
+    void missingKeyReturnsDefault() {
+        IntIntHashMap map = new IntIntHashMap(4);
+        assertEquals(-7, map.get(42, -7));
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    void addToStartsFromZeroAndAccumulates() {
+        IntIntHashMap map = new IntIntHashMap(4);
+        assertEquals(3, map.addTo(5, 3));
+        assertEquals(5, map.addTo(5, 2));
+        assertEquals(1, map.addTo(0, 1));
+        assertEquals(5, map.get(5, -1));
+        assertEquals(1, map.get(0, -1));
+        assertEquals(2, map.size());
+    }
+
+    // Far more keys than the expected size, so the map is rehashed several times.
+    @Test
+    void keepsAllEntriesWhileGrowing() {
+        IntIntHashMap map = new IntIntHashMap(2);
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt(5000);
+            int delta = random.nextInt(10) + 1;
+            expected.merge(key, delta, Integer::sum);
+            assertEquals((int) expected.get(key), map.addTo(key, delta));
+        }
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Integer, Integer> each: expected.entrySet()) {
+            assertEquals((int) each.getValue(), map.get(each.getKey(), -1));
+        }
+    }
+
+    @Test
+    void slotsVisitEveryEntryOnce() {
+        IntIntHashMap map = new IntIntHashMap(4);
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int key = 0; key < 100; key += 3) {
+            map.addTo(key, key * 2);
+            expected.put(key, key * 2);
+        }
+        Map<Integer, Integer> visited = new HashMap<>();
+        for (int slot = 0; slot < map.capacity(); slot++) {
+            if (map.keyAt(slot) != IntIntHashMap.EMPTY) {
+                assertEquals(null, visited.put(map.keyAt(slot), map.valueAt(slot)));
+            }
+        }
+        assertEquals(expected, visited);
+    }
+}
@@ -0,0 +1,51 @@
+package com.laioffer.jupiter.recommendation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongHashSetTest {
+    @Test
+    void addReturnsWhetherTheValueIsNew() {
+        LongHashSet set = new LongHashSet(4);
+        assertTrue(set.add(0));
+        assertTrue(set.add(7));
+        assertFalse(set.add(7));
+        assertFalse(set.add(0));
+        assertEquals(2, set.size());
+    }
+
+    // The values CoOccurrenceModel stores: (user << 32 | item), which differ only in the high or the low half.
+    @Test
+    void tellsApartValuesThatShareHalves() {
+        LongHashSet set = new LongHashSet(4);
+        assertTrue(set.add((1L << 32) | 2));
+        assertTrue(set.add((2L << 32) | 1));
+        assertTrue(set.add(2));
+        assertTrue(set.add(1L << 32));
+        assertFalse(set.add((1L << 32) | 2));
+        assertEquals(4, set.size());
+    }
+
+    // Far more values than the expected size, so the set is rehashed several times.
+    @Test
+    void keepsAllValuesWhileGrowing() {
+        LongHashSet set = new LongHashSet(2);
+        Set<Long> expected = new HashSet<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            long value = ((long) random.nextInt(100) << 32) | random.nextInt(100);
+            assertEquals(expected.add(value), set.add(value));
+        }
+        assertEquals(expected.size(), set.size());
+        for (long value: expected) {
+            assertFalse(set.add(value));
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.laioffer.jupiter.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AppConfigTest {
+    // Only invalid files are reloaded, a valid one would replace the snapshot the other tests read.
+    private static void assertNotReloaded(Path dir, String content) throws IOException {
+        Path file = dir.resolve("config.properties");
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        AppConfig before = AppConfig.get();
+        assertFalse(AppConfig.reload(file));
+        assertSame(before, AppConfig.get());
+    }
+
+    @Test
+    void keepsTheCurrentSnapshotIfANumberDoesNotParse(@TempDir Path dir) throws IOException {
+        assertEquals(7, AppConfig.get().getInt("app_config_test_int", 7));
+        assertNotReloaded(dir, "app_config_test_int=5s\n");
+        assertEquals(7, AppConfig.get().getInt("app_config_test_int", 7));
+    }
+
+    @Test
+    void keepsTheCurrentSnapshotIfABooleanIsMisspelled(@TempDir Path dir) throws IOException {
+        assertTrue(AppConfig.get().getBoolean("app_config_test_boolean", true));
+        assertNotReloaded(dir, "app_config_test_boolean=ture\n");
+    }
+}
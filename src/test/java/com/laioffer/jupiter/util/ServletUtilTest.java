@@ -0,0 +1,98 @@
+package com.laioffer.jupiter.util;
+
+import org.junit.jupiter.api.Test;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ServletUtilTest {
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    private final List<String> calls = new ArrayList<>();
+
+    // A bean whose getter fails after a part of the body has been serialized.
+    public static class Broken {
+        public String getFirst() {
+            return "written";
+        }
+
+        public String getSecond() {
+            throw new IllegalStateException("Broken item.");
+        }
+    }
+
+    private HttpServletRequest request() {
+        return (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { HttpServletRequest.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getServletPath":
+                            return "/test";
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    // Records the calls that change the response. The output stream is only touched once the body is written.
+    private HttpServletResponse response() {
+        ServletOutputStream stream = new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+        };
+        return (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { HttpServletResponse.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getOutputStream":
+                            return stream;
+                        case "isCommitted":
+                            return false;
+                        case "setContentLength":
+                        case "resetBuffer":
+                        case "reset":
+                            calls.add(method.getName() + (args == null ? "" : " " + args[0]));
+                            return null;
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    @Test
+    void writesSmallBodiesWithContentLength() throws IOException {
+        Map<String, String> content = Collections.singletonMap("name", "value");
+        ServletUtil.writeItemMap(request(), response(), content);
+        assertEquals("{\"name\":\"value\"}", new String(body.toByteArray(), StandardCharsets.UTF_8));
+        assertEquals(Collections.singletonList("setContentLength " + body.size()), calls);
+    }
+
+    @Test
+    void failedSerializationSendsNothing() {
+        assertThrows(IOException.class, () -> ServletUtil.writeItemMap(request(), response(), new Broken()));
+        assertEquals(0, body.size());
+        assertFalse(calls.stream().anyMatch(call -> call.startsWith("setContentLength")));
+    }
+}